@@ -52,7 +52,7 @@ public abstract class AbstractClient {
             String[] parts = response.split(" ", 3);
             // Check if the response matches the original message's operation
             if(parts[0].equals(msg[0])){
-                if (parts[1].equals("FAIL")) {
+                if (parts[1].equals("FAIL") || parts[1].equals("BUSY")) {
                     ClientLogger.logWarning("Received from "+ hostname +":"+port + " : Status: " + parts[1]
                             + ". Message: "+parts[2]);
                 }else{
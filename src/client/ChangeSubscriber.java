@@ -0,0 +1,141 @@
+package client;
+
+import server.SendMessage;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+
+/**
+ * ChangeSubscriber follows the change feed of a server with repeated CHANGES requests.
+ * It remembers the position to resume from, so after a disconnect it reconnects and
+ * continues where it stopped. Positions are only meaningful on the server that returned
+ * them: if that server restarted, or the feed dropped the position, the subscriber logs
+ * that events were missed and continues from the oldest event still available.
+ * Each request waits on the server for new events, and the subscriber only asks for the
+ * next batch after handling the current one. Any other failure stops the subscriber.
+ */
+public class ChangeSubscriber extends AbstractClient {
+    // Default RMI service port number
+    private static final int PORT = 1099;
+    // Largest number of events requested at once
+    private static final int BATCH = 100;
+    // How long the server may hold a request open while waiting for events
+    private static final long WAIT_MILLIS = 10000;
+    // Pause before reconnecting after a failure
+    private static final long RETRY_MILLIS = 2000;
+    // Text before the position to continue from in a truncation or reset error
+    private static final String OLDEST_AVAILABLE = "oldest available is ";
+
+    // Remote server object implementing SendMessage interface
+    private SendMessage server;
+    // Optional filter appended to every request, e.g. "KEY a" or "PREFIX user"
+    private final String filter;
+    // The first log position not handled yet, as "epoch:position" once the server returned one
+    private String position;
+
+    /**
+     * Constructor for ChangeSubscriber.
+     *
+     * @param servername the name or IP address of the target server
+     * @param port       the RMI registry port
+     * @param from       the first log position to receive, as "epoch:position" or a bare position
+     * @param filter     "KEY key", "PREFIX prefix" or null for every change
+     */
+    public ChangeSubscriber(String servername, int port, String from, String filter) {
+        super(servername, port);
+        this.position = from;
+        this.filter = filter;
+    }
+
+    /**
+     * @return the first log position not handled yet, to resume from later
+     */
+    public String getPosition() {
+        return position;
+    }
+
+    /**
+     * Requests the next batch of changes and logs every event.
+     * On a connection failure the stub is dropped and looked up again on the next call.
+     *
+     * @return the number of events received, or -1 if the server rejected the request
+     */
+    public int poll() {
+        String request = "CHANGES " + position + " " + BATCH + " " + WAIT_MILLIS
+                + (filter != null ? " " + filter : "");
+        String response;
+        try {
+            if (server == null) {
+                Registry registry = LocateRegistry.getRegistry(hostname, port);
+                server = (SendMessage) registry.lookup("SendMessage");
+            }
+            response = server.sendMessage(request);
+        } catch (RemoteException e) {
+            ClientLogger.logWarning("Lost connection to " + hostname + ", resuming from position " + position);
+            server = null;
+            return 0;
+        } catch (Exception e) {
+            ClientLogger.logError("ChangeSubscriber exception: " + e.getMessage(), e);
+            server = null;
+            return 0;
+        }
+        return handle(response);
+    }
+
+    /**
+     * Parses a CHANGES response of the form "CHANGES SUCCESS n events: @p cmd | @p cmd NEXT epoch:p".
+     *
+     * @return the number of events received, or -1 if the server rejected the request
+     */
+    private int handle(String response) {
+        if (response == null) {
+            ClientLogger.logWarning("Received no reply from " + hostname + ":" + port + ", the request was malformed");
+            return -1;
+        }
+        String[] parts = response.split(" ", 3);
+        if (!parts[1].equals("SUCCESS")) {
+            ClientLogger.logWarning("Received from " + hostname + ":" + port + " : " + parts[2]);
+            int oldest = parts[2].indexOf(OLDEST_AVAILABLE);
+            if (oldest < 0) {
+                return -1;
+            }
+            // The feed no longer holds our position or was reset; events in between were missed
+            position = parts[2].substring(oldest + OLDEST_AVAILABLE.length());
+            ClientLogger.logWarning("Events were missed, continuing from position " + position);
+            return 0;
+        }
+        String description = parts[2];
+        int next = description.lastIndexOf(" NEXT ");
+        String body = description.substring(description.indexOf(':') + 1, next).trim();
+        int count = 0;
+        if (!body.isEmpty()) {
+            for (String event : body.split(" \\| ")) {
+                ClientLogger.logInfo("Change from " + hostname + ": " + event);
+                count++;
+            }
+        }
+        position = description.substring(next + " NEXT ".length());
+        return count;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            ClientLogger.logWarning("Parameter(s): <server-name> [from-position] [KEY key | PREFIX prefix]");
+            System.exit(1);
+        }
+        String from = args.length > 1 ? args[1] : "1";
+        String filter = args.length > 3 ? args[2] + " " + args[3] : null;
+        ChangeSubscriber subscriber = new ChangeSubscriber(args[0], PORT, from, filter);
+        while (true) {
+            int received = subscriber.poll();
+            if (received < 0) {
+                ClientLogger.logWarning("Stopping, the server rejected the request at position " + subscriber.getPosition());
+                System.exit(1);
+            }
+            if (received == 0 && subscriber.server == null) {
+                Thread.sleep(RETRY_MILLIS);
+            }
+        }
+    }
+}
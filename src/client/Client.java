@@ -5,11 +5,11 @@ public class Client {
     private static final int PORT = 1099;
     public static void main(String[] args) throws InterruptedException {
         // The argument should include server name
-        // should only take Server1 Server2 Server3 Server4 Server5
-        if (args.length != 1 || !args[0].matches("Server[1-5]")) {
+        // should only take a voter (Server1, Server2, ...) or an observer (Observer1, ...)
+        if (args.length != 1 || !args[0].matches("(Server|Observer)[0-9]+")) {
             ClientLogger.logWarning("IllegalArgumentException: " +
                     "Parameter(s): <server-name>; " +
-                    "should only take Server1 Server2 Server3 Server4 Server5");
+                    "should only take a server name such as Server1 or Observer1");
             System.exit(1);
         }
 
@@ -46,6 +46,18 @@ public class Client {
         client.send("DELETE 5");
         client.send("DELETE 4");
 
+        client.send("INCR counter");
+        client.send("INCR counter 5");
+        client.send("APPEND Good !");
+        client.send("PUT-IF-ABSENT Good Hello");
+        client.send("CAS 2 0 stale");
+
+        client.send("TXN CHECK 1 1;PUT 1 2;PUT 2 2;GET 1");
+        client.send("TXN CHECK 1 1;DELETE 3");
+
+        client.send("SCAN 1 * 2");
+        client.send("PREFIX G 10");
+
     }
 
 }
@@ -10,6 +10,11 @@ import java.rmi.registry.Registry;
  * It extends AbstractClient and connects to the specified server to send messages.
  */
 public class TCPClient extends AbstractClient{
+    // How often a request rejected with BUSY is sent again
+    private static final int BUSY_RETRIES = 3;
+    // Pause before the first retry; doubled for every further retry
+    private static final long BUSY_BACKOFF_MILLIS = 200;
+
     // Remote server object implementing SendMessage interface
     private SendMessage server;
 
@@ -47,6 +52,15 @@ public class TCPClient extends AbstractClient{
             // get the response from server
             response = server.sendMessage(message);
             ClientLogger.logInfo("Message sent: " + message);
+            // the server is overloaded: back off and try again a few times
+            for (int retry = 0; retry < BUSY_RETRIES && isBusy(response); retry++) {
+                long backoff = BUSY_BACKOFF_MILLIS << retry;
+                Thread.sleep(backoff + (long) (Math.random() * backoff));
+                response = server.sendMessage(message);
+                ClientLogger.logInfo("Message resent after BUSY: " + message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception  e) {
             ClientLogger.logError("TCPClient exception: " + e.getMessage(), e);
         }
@@ -56,4 +70,18 @@ public class TCPClient extends AbstractClient{
         return response;
     }
 
+    /**
+     * Checks whether the server rejected a request because it was overloaded.
+     *
+     * @param response the response received from the server
+     * @return true if the response status is BUSY
+     */
+    private boolean isBusy(String response) {
+        if (response == null) {
+            return false;
+        }
+        String[] parts = response.split(" ", 3);
+        return parts.length > 1 && parts[1].equals("BUSY");
+    }
+
 }
@@ -0,0 +1,296 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ChangeFeed keeps the most recent committed write commands of this replica so that
+ * downstream caches and indexes can follow changes instead of polling with GET.
+ *
+ * Every event carries the log position at which the learner applied it, the command,
+ * and its effect: each key it changed with the resulting value and version, or that
+ * the key was deleted, so a cache can apply the event without reading the store. Subscribers
+ * pull events with CHANGES, remember the returned NEXT position and resume from it after
+ * a disconnect.
+ *
+ * Positions count the commands this server applied since it started, so they differ
+ * between servers and start over when a server restarts. Each feed therefore has a
+ * random epoch, and positions handed to subscribers are written as "epoch:position".
+ * A position from another epoch fails with a reset error instead of silently skipping
+ * the events that were applied since the restart. An observer that missed commands
+ * starts a new feed as well, so its subscribers learn that events were missed.
+ *
+ * The feed holds a bounded number of events: a subscriber that falls too far behind
+ * gets a truncation error instead of slowing down the learner, which only ever
+ * appends in O(1) and never waits for subscribers.
+ *
+ * Events are kept in a ring indexed by their order of arrival. Readers find the first
+ * event at or after their position with a binary search and scan the ring without
+ * holding a lock; the monitor is only used to wait for and announce new events.
+ */
+public class ChangeFeed {
+    /** Number of events kept for subscribers that resume from an older position */
+    public static final int CAPACITY = 10000;
+
+    /** Largest number of events returned by a single CHANGES request */
+    public static final int MAX_BATCH = 1000;
+
+    /** Longest time a CHANGES request waits for new events */
+    public static final long MAX_WAIT_MILLIS = 30000;
+
+    /**
+     * A committed write command and the keys it changed.
+     */
+    public static class Event {
+        private final long index;
+        private final long position;
+        private final String command;
+        private final List<String> keys;
+        private final String effect;
+
+        Event(long index, long position, String command, Map<String, VersionedValue> changes) {
+            this.index = index;
+            this.position = position;
+            this.command = command;
+            this.keys = new ArrayList<>(changes.keySet());
+            StringBuilder effect = new StringBuilder();
+            for (Map.Entry<String, VersionedValue> change : changes.entrySet()) {
+                if (effect.length() > 0) {
+                    effect.append(", ");
+                }
+                VersionedValue value = change.getValue();
+                effect.append(change.getKey()).append(value.isDeleted() ? " deleted" : "=" + value);
+            }
+            this.effect = effect.toString();
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the changed keys as "key=value version=N" or "key deleted", separated by ", "
+         */
+        public String getEffect() {
+            return effect;
+        }
+
+        /**
+         * @param prefix the key prefix to match, or null to match every event
+         * @param exact true to match only the key equal to {@code prefix}
+         * @return true if the event changed a matching key
+         */
+        boolean matches(String prefix, boolean exact) {
+            if (prefix == null) {
+                return true;
+            }
+            for (String key : keys) {
+                if (exact ? key.equals(prefix) : key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + position + " " + command + " => " + effect;
+        }
+    }
+
+    /** Identifies this feed; positions of an earlier run of the server have another epoch */
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Integer.MAX_VALUE);
+
+    /** Event i is kept in slot i % CAPACITY until event i + CAPACITY replaces it */
+    private final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<>(CAPACITY);
+
+    /** Index the next event gets; set after its slot is written, which publishes the event */
+    private volatile long nextIndex = 0;
+
+    /** Position of the newest event dropped to stay within CAPACITY */
+    private volatile long truncatedPosition = 0;
+
+    /** Position of the newest applied command, whether it was recorded or not */
+    private volatile long headPosition = 0;
+
+    /**
+     * Creates an empty feed for a server that starts applying commands at position 1.
+     */
+    public ChangeFeed() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty feed that continues after a log position, e.g. on an observer
+     * whose store jumped to another replica's state. Subscribers that resume from an
+     * earlier feed get a reset error that points to the first position after it.
+     *
+     * @param position the last log position that is not part of this feed
+     */
+    public ChangeFeed(long position) {
+        this.truncatedPosition = position;
+        this.headPosition = position;
+    }
+
+    /**
+     * @return the epoch that positions of this feed are qualified with
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Records a committed write command. Called by the learner only, after applying it.
+     *
+     * @param position the log position of the command
+     * @param command the command as it was chosen by Paxos
+     * @param changes the keys the command wrote or deleted, with their new values
+     */
+    public void append(long position, String command, Map<String, VersionedValue> changes) {
+        long index = nextIndex;
+        int slot = (int) (index % CAPACITY);
+        if (index >= CAPACITY) {
+            // Announce the truncation before the slot is reused, so readers never miss it
+            truncatedPosition = ring.get(slot).getPosition();
+        }
+        ring.set(slot, new Event(index, position, command, changes));
+        nextIndex = index + 1;
+        headPosition = position;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Advances the feed past a command that changed nothing, so that subscribers
+     * do not keep asking for a position that will never be recorded.
+     *
+     * @param position the log position of the command
+     */
+    public void skip(long position) {
+        headPosition = position;
+    }
+
+    /**
+     * Handles the CHANGES operation. Returns the events at or after {@code from} that
+     * match the filter, waiting up to {@code waitMillis} if there are none yet.
+     * The description ends with "NEXT epoch:position", the position to resume from.
+     *
+     * @param epoch the epoch of {@code from}
+     * @param from the first log position the subscriber has not seen
+     * @param limit the maximum number of events to return
+     * @param waitMillis how long to wait for a matching event
+     * @param prefix the key or key prefix to filter on, or null for all events
+     * @param exact true to filter on a single key instead of a prefix
+     * @return a Response object with the events, or an error if {@code from} was truncated
+     *         or belongs to another epoch
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public Response read(long epoch, long from, int limit, long waitMillis, String prefix, boolean exact)
+            throws InterruptedException {
+        if (epoch != this.epoch) {
+            return new Response("CHANGES","FAIL",
+                    "Feed was reset, epoch " + epoch + " is not the current epoch " + this.epoch
+                            + ", oldest available is " + this.epoch + ":" + (truncatedPosition + 1));
+        }
+        long deadline = System.currentTimeMillis() + Math.min(waitMillis, MAX_WAIT_MILLIS);
+        List<Event> batch = new ArrayList<>();
+        long index = -1;
+        long head;
+        while (true) {
+            // Every event up to the head is below the end index read after it
+            head = headPosition;
+            long end = nextIndex;
+            if (index < 0) {
+                // Events dropped before the end index was read are covered by this check
+                if (from <= truncatedPosition) {
+                    return truncated(from);
+                }
+                index = find(from, end);
+            }
+            // Only events that arrived since the last scan are looked at
+            index = collect(index, end, limit, prefix, exact, batch);
+            if (index < 0) {
+                return truncated(from);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (!batch.isEmpty() || remaining <= 0) {
+                break;
+            }
+            synchronized (this) {
+                if (nextIndex == end) {
+                    wait(remaining);
+                }
+            }
+        }
+        // A full batch resumes after its last event; otherwise every position up to the head was scanned
+        long next = (batch.size() == limit) ? batch.get(batch.size() - 1).getPosition() + 1
+                : Math.max(from, head + 1);
+        StringBuilder description = new StringBuilder(batch.size() + " events:");
+        for (int i = 0; i < batch.size(); i++) {
+            description.append(i == 0 ? " " : " | ").append(batch.get(i));
+        }
+        description.append(" NEXT ").append(epoch).append(':').append(next);
+        return new Response("CHANGES","SUCCESS", description.toString());
+    }
+
+    /**
+     * Builds the error for a position that is no longer retained.
+     */
+    private Response truncated(long from) {
+        return new Response("CHANGES","FAIL",
+                "Position " + epoch + ":" + from + " is no longer retained, oldest available is "
+                        + epoch + ":" + (truncatedPosition + 1));
+    }
+
+    /**
+     * Finds the index of the first event at or after a position with a binary search
+     * over the events still in the ring.
+     *
+     * @param from the log position to start at
+     * @param end the index after the newest event to consider
+     * @return the index of the first event at or after {@code from}, or {@code end} if there is none
+     */
+    private long find(long from, long end) {
+        long low = Math.max(0, end - CAPACITY);
+        long high = end;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            Event event = ring.get((int) (middle % CAPACITY));
+            // An overwritten slot held an event at or before the truncated position
+            long position = (event.index == middle) ? event.getPosition() : truncatedPosition;
+            if (position < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds matching events from {@code index} up to {@code end} to the batch until it holds
+     * {@code limit} events.
+     *
+     * @return the index to continue scanning at, or -1 if an event was overwritten before it was read
+     */
+    private long collect(long index, long end, int limit, String prefix, boolean exact, List<Event> batch) {
+        for (; index < end && batch.size() < limit; index++) {
+            Event event = ring.get((int) (index % CAPACITY));
+            if (event.index != index) {
+                return -1;
+            }
+            if (event.matches(prefix, exact)) {
+                batch.add(event);
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,181 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ClusterConfig describes the servers of the distributed key-value store.
+ * Each node is either a voter, which takes part in the Paxos prepare and accept
+ * phases, or an observer, which only learns chosen values and serves reads.
+ *
+ * The configuration is read from the command line:
+ * - {@code <name> --config <file>} reads the nodes from a file
+ * - {@code <name> --voters a,b,c [--observers x,y]} lists the nodes directly
+ * - {@code <name>} alone uses the default cluster of voters Server1 through Server5
+ *
+ * Each line of a configuration file has the form {@code <name> <voter|observer> [host[:port]]}.
+ * Blank lines and lines starting with '#' are ignored. The host defaults to the node name
+ * and the port to the default RMI port.
+ */
+public class ClusterConfig {
+    /** Default RMI port number used for server communication */
+    public static final int DEFAULT_PORT = 1099;
+
+    /** Number of voters in the default cluster */
+    private static final int DEFAULT_VOTERS = 5;
+
+    /**
+     * A single server of the cluster and the address its RMI registry listens on.
+     */
+    public static class Node {
+        private final String name;
+        private final String host;
+        private final int port;
+        private final boolean observer;
+
+        public Node(String name, String host, int port, boolean observer) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.observer = observer;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public boolean isObserver() {
+            return observer;
+        }
+
+        /**
+         * @return the RMI URL of the node's SendMessage service
+         */
+        public String getUrl() {
+            return "rmi://" + host + ":" + port + "/SendMessage";
+        }
+
+        @Override
+        public String toString() {
+            return name + (observer ? " (observer)" : " (voter)");
+        }
+    }
+
+    private final Node self;
+    private final List<Node> nodes;
+
+    private ClusterConfig(String selfName, List<Node> nodes) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        Node found = null;
+        for (Node node : nodes) {
+            if (node.getName().equals(selfName)) {
+                found = node;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("Server " + selfName + " is not part of the cluster configuration");
+        }
+        if (getVoters().isEmpty()) {
+            throw new IllegalArgumentException("The cluster configuration has no voters");
+        }
+        this.self = found;
+    }
+
+    /**
+     * Builds the cluster configuration from the command line arguments.
+     *
+     * @param args the arguments passed to ServerApp
+     * @return the cluster configuration
+     * @throws IOException if the configuration file cannot be read
+     * @throws IllegalArgumentException if the arguments or the configuration file are invalid
+     */
+    public static ClusterConfig fromArgs(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing server name");
+        }
+        List<Node> nodes = new ArrayList<>();
+        if (args.length == 1) {
+            for (int i = 1; i <= DEFAULT_VOTERS; i++) {
+                nodes.add(new Node("Server" + i, "Server" + i, DEFAULT_PORT, false));
+            }
+        } else if (args.length == 3 && args[1].equals("--config")) {
+            for (String line : Files.readAllLines(Paths.get(args[2]))) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    nodes.add(parseLine(line));
+                }
+            }
+        } else if ((args.length == 3 || args.length == 5) && args[1].equals("--voters")) {
+            addNodes(nodes, args[2], false);
+            if (args.length == 5) {
+                if (!args[3].equals("--observers")) {
+                    throw new IllegalArgumentException("Unknown option " + args[3]);
+                }
+                addNodes(nodes, args[4], true);
+            }
+        } else {
+            throw new IllegalArgumentException("Usage: <name> [--config <file> | --voters a,b,c [--observers x,y]]");
+        }
+        return new ClusterConfig(args[0], nodes);
+    }
+
+    /**
+     * Parses one "name role [host[:port]]" line of a configuration file.
+     */
+    private static Node parseLine(String line) {
+        String[] parts = line.split("\\s+");
+        if (parts.length < 2 || parts.length > 3
+                || !(parts[1].equals("voter") || parts[1].equals("observer"))) {
+            throw new IllegalArgumentException("Malformed cluster configuration line: " + line);
+        }
+        String host = parts[0];
+        int port = DEFAULT_PORT;
+        if (parts.length == 3) {
+            String[] address = parts[2].split(":");
+            host = address[0];
+            if (address.length == 2) {
+                port = Integer.parseInt(address[1]);
+            }
+        }
+        return new Node(parts[0], host, port, parts[1].equals("observer"));
+    }
+
+    /**
+     * Adds the comma separated node names of a --voters or --observers argument.
+     */
+    private static void addNodes(List<Node> nodes, String names, boolean observer) {
+        for (String name : names.split(",")) {
+            if (!name.isEmpty()) {
+                nodes.add(new Node(name, name, DEFAULT_PORT, observer));
+            }
+        }
+    }
+
+    /**
+     * @return the node this server runs as
+     */
+    public Node getSelf() {
+        return self;
+    }
+
+    /**
+     * @return every voting node, including this server if it is a voter
+     */
+    public List<Node> getVoters() {
+        List<Node> voters = new ArrayList<>();
+        for (Node node : nodes) {
+            if (!node.isObserver()) {
+                voters.add(node);
+            }
+        }
+        return voters;
+    }
+}
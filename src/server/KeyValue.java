@@ -1,26 +1,187 @@
 package server;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
 
 /**
  * The KeyValue class provides a simple in-memory key-value store
  * for managing key-value pairs with PUT, GET, and DELETE operations.
+ * Every key carries a version that grows with each write, which enables
+ * compare-and-set (CAS) and other conditional updates applied on the server.
+ * Keys written with a TTL are tracked in a timing wheel; once due, they are removed
+ * by an EXPIRE command that goes through Paxos like any other write.
+ * Keys are kept in sorted order so that range (SCAN) and prefix (PREFIX)
+ * queries can be answered page by page without blocking writers.
+ *
+ * The store is multi-versioned: each command applied by the learner writes new
+ * versions tagged with its log position, and its writes become visible together
+ * once the command is committed. Readers pin a snapshot at a position and read
+ * any number of keys at that position without taking a lock. Old versions are
+ * garbage-collected a few keys at a time once no pinned snapshot can see them.
  */
 public class KeyValue {
-    private Map<String, String> store;
+    /** Largest number of entries returned in a single SCAN or PREFIX page */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /** Marker accepted as a SCAN end key meaning "until the last key" */
+    public static final String OPEN_END = "*";
+
+    /** Largest number of operations accepted in a single TXN */
+    public static final int MAX_TXN_OPERATIONS = 100;
+
+    /** Largest number of keys read with a single READ */
+    public static final int MAX_READ_KEYS = 1000;
+
+    /** Longest TTL accepted by PUT, ten years in seconds; longer ones would overflow the expiry time */
+    public static final long MAX_TTL_SECONDS = 10L * 365 * 24 * 60 * 60;
+
+    /** Number of keys whose old versions are collected after each applied command */
+    private static final int GC_KEYS_PER_APPLY = 32;
+
+    /** Each key maps to its newest version, which links to the older ones */
+    private ConcurrentSkipListMap<String, VersionedValue> store;
+
+    /** Committed log position and the snapshots pinned by readers */
+    private final SnapshotRegistry snapshots = new SnapshotRegistry();
+
+    /** Log position of the command being applied; its writes are tagged with it */
+    private long applyingPosition = 0;
+
+    /** Oldest position a reader may read at, as of the last committed command */
+    private long gcHorizon = 0;
+
+    /** The key after which the next garbage collection step starts */
+    private String gcCursor = null;
+
+    /** Keys written or deleted by the command being applied, with their new values */
+    private final Map<String, VersionedValue> appliedChanges = new LinkedHashMap<>();
+
+    /**
+     * The version given to the most recent write. Versions come from one counter for
+     * the whole store, so a key that is deleted and created again never reuses a version.
+     * Writes are applied one at a time by the learner, so no extra locking is needed.
+     */
+    private long lastVersion = 0;
+
+    /** Resolution of the expiry timing wheel in milliseconds */
+    private static final long EXPIRY_TICK_MILLIS = 100;
+
+    /** Keys written with a TTL, as "key@version", by the time they should expire */
+    private final TimingWheel<String> expiries =
+            new TimingWheel<>(EXPIRY_TICK_MILLIS, System.currentTimeMillis());
 
     /**
      * Constructor to initialize the key-value store.
      * The store is pre-populated with keys "1" to "5" and their values set to "1".
      */
     public KeyValue() {
-        store = new HashMap<>();
-        store.put("1", "1");
-        store.put("2", "1");
-        store.put("3", "1");
-        store.put("4", "1");
-        store.put("5", "1");
+        store = new ConcurrentSkipListMap<>();
+        write("1", "1");
+        write("2", "1");
+        write("3", "1");
+        write("4", "1");
+        write("5", "1");
+    }
+
+    /**
+     * Starts applying the command at a log position. Its writes stay invisible
+     * to snapshot readers until {@link #endApply()} is called.
+     *
+     * @param position the log position of the command
+     */
+    public void beginApply(long position) {
+        applyingPosition = position;
+        appliedChanges.clear();
+    }
+
+    /**
+     * Commits the writes of the command being applied and collects the old versions
+     * of the next few keys.
+     */
+    public void endApply() {
+        snapshots.commit(applyingPosition);
+        gcHorizon = snapshots.horizon();
+        collectGarbage(GC_KEYS_PER_APPLY);
+    }
+
+    /**
+     * Returns the keys changed by the last applied command, in the order they were
+     * written, each with its new value or a deletion marker. The map is reused by the
+     * next command, so it must be read before that command is applied.
+     *
+     * @return the changes of the last applied command, empty if it changed nothing
+     */
+    public Map<String, VersionedValue> getAppliedChanges() {
+        return appliedChanges;
+    }
+
+    /**
+     * Stores a value under a key with the next version.
+     *
+     * @return the stored value with its new version
+     */
+    private VersionedValue write(String key, String value) {
+        VersionedValue versioned = new VersionedValue(value, ++lastVersion, applyingPosition, trimmed(key));
+        store.put(key, versioned);
+        appliedChanges.put(key, versioned);
+        return versioned;
+    }
+
+    /**
+     * Marks a key as deleted. Readers of older snapshots still see its last value.
+     */
+    private void remove(String key) {
+        VersionedValue deleted = new VersionedValue(null, 0, applyingPosition, trimmed(key));
+        store.put(key, deleted);
+        appliedChanges.put(key, deleted);
+    }
+
+    /**
+     * Returns the newest version of a key with the versions no reader can see dropped.
+     */
+    private VersionedValue trimmed(String key) {
+        VersionedValue head = store.get(key);
+        if (head != null) {
+            head.trim(gcHorizon);
+        }
+        return head;
+    }
+
+    /**
+     * Returns the newest value of a key as seen by the learner, including writes
+     * of the command being applied, or null if the key does not exist.
+     */
+    private VersionedValue latest(String key) {
+        VersionedValue head = store.get(key);
+        return (head == null || head.isDeleted()) ? null : head;
+    }
+
+    /**
+     * Drops old versions of up to {@code count} keys, continuing where the previous
+     * call stopped and wrapping around at the last key. A key whose only remaining
+     * version is a deletion nobody can see any more is removed from the store.
+     */
+    private void collectGarbage(int count) {
+        for (int i = 0; i < count && !store.isEmpty(); i++) {
+            Map.Entry<String, VersionedValue> entry =
+                    (gcCursor == null) ? store.firstEntry() : store.higherEntry(gcCursor);
+            if (entry == null) {
+                gcCursor = null;
+                continue;
+            }
+            gcCursor = entry.getKey();
+            VersionedValue head = entry.getValue();
+            VersionedValue current = head.trim(gcHorizon);
+            if (current == head && head.isDeleted()) {
+                store.remove(entry.getKey(), head);
+            }
+        }
     }
 
     /**
@@ -32,26 +193,115 @@ public class KeyValue {
      *         and whether it was an update or a new insertion.
      */
     public Response put(String key, String value) {
-        if (store.containsKey(key)) {
-            store.put(key, value);
+        if (latest(key) != null) {
+            VersionedValue versioned = write(key, value);
             return new Response("PUT","SUCCESS",
-                    "key "+ key +" is exist, update value to " + value);
+                    "key "+ key +" is exist, update value to " + versioned);
         }else{
-            store.put(key, value);
+            VersionedValue versioned = write(key, value);
             return new Response("PUT","SUCCESS",
-                    "PUT operation successful for key " + key +" with value " + value);
+                    "PUT operation successful for key " + key +" with value " + versioned);
+        }
+    }
+
+    /**
+     * Handles the PUT operation with a time to live. The key is scheduled for expiry;
+     * it stays readable until the EXPIRE command that removes it is committed.
+     *
+     * @param key The key to add or update.
+     * @param value The value to associate with the key.
+     * @param ttl The time to live in seconds, at most MAX_TTL_SECONDS.
+     * @return A Response object indicating the success of the operation, or an error if the TTL is invalid.
+     */
+    public Response put(String key, String value, String ttl) {
+        long seconds;
+        try {
+            seconds = Long.parseLong(ttl);
+        } catch (NumberFormatException e) {
+            seconds = -1;
+        }
+        if (seconds <= 0 || seconds > MAX_TTL_SECONDS) {
+            return new Response("PUT","FAIL",
+                    "PUT operation failed. TTL " + ttl + " must be between 1 and " + MAX_TTL_SECONDS + " seconds.");
+        }
+        VersionedValue versioned = write(key, value);
+        expiries.add(key + "@" + versioned.getVersion(), System.currentTimeMillis() + seconds * 1000);
+        return new Response("PUT","SUCCESS",
+                "PUT operation successful for key " + key + " with value " + versioned
+                        + ", expires in " + seconds + " seconds");
+    }
+
+    /**
+     * Collects the keys whose TTL has run out. Keys that were rewritten or deleted
+     * since they were scheduled are skipped, since their entry has another version.
+     *
+     * @param nowMillis the current time in milliseconds
+     * @return the due keys as "key@version", to be removed with EXPIRE
+     */
+    public List<String> dueExpirations(long nowMillis) {
+        List<String> due = new ArrayList<>();
+        for (String expiry : expiries.advance(nowMillis)) {
+            int at = expiry.lastIndexOf('@');
+            VersionedValue current = latest(expiry.substring(0, at));
+            if (current != null && current.getVersion() == Long.parseLong(expiry.substring(at + 1))) {
+                due.add(expiry);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Schedules keys again, e.g. after the EXPIRE command that should remove them was not chosen.
+     *
+     * @param due the keys as "key@version"
+     * @param dueMillis the time in milliseconds at which to report them again
+     */
+    public void scheduleExpirations(List<String> due, long dueMillis) {
+        for (String expiry : due) {
+            expiries.add(expiry, dueMillis);
+        }
+    }
+
+    /**
+     * Handles the EXPIRE operation to remove a batch of keys whose TTL ran out.
+     * A key is only removed if it still has the version it was scheduled with,
+     * so a write committed after the key was scheduled keeps it alive.
+     *
+     * @param expiries The keys to remove as "key@version".
+     * @return A Response object with the number of keys removed, or an error if none was removed.
+     */
+    public Response expire(String[] expiries) {
+        int removed = 0;
+        for (String expiry : expiries) {
+            int at = expiry.lastIndexOf('@');
+            if (at < 0) {
+                continue;
+            }
+            String key = expiry.substring(0, at);
+            VersionedValue current = latest(key);
+            if (current != null && String.valueOf(current.getVersion()).equals(expiry.substring(at + 1))) {
+                remove(key);
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return new Response("EXPIRE","FAIL",
+                    "EXPIRE operation removed no keys, they were already rewritten or removed");
         }
+        return new Response("EXPIRE","SUCCESS",
+                "EXPIRE operation removed " + removed + " of " + expiries.length + " keys");
     }
 
     /**
      * Handles the GET operation to retrieve the value associated with a key.
      *
      * @param key The key to retrieve.
-     * @return A Response object with the value if the key exists, or an error if not.
+     * @return A Response object with the value and its version if the key exists, or an error if not.
      */
     public Response get(String key) {
-        if (store.containsKey(key)) {
-            return new Response("GET","SUCCESS", store.get(key));
+        VersionedValue versioned = latest(key);
+        if (versioned != null) {
+            return new Response("GET","SUCCESS", versioned.toString());
         } else {
             return new Response("GET","FAIL",
                     "GET operation failed. Key " + key + " not found.");
@@ -66,8 +316,8 @@ public class KeyValue {
      *         or an error if the key does not exist.
      */
     public Response delete(String key) {
-        if (store.containsKey(key)) {
-            store.remove(key);
+        if (latest(key) != null) {
+            remove(key);
             return new Response("DELETE","SUCCESS",
                     "DELETE operation successful for key: " + key);
         } else {
@@ -76,4 +326,465 @@ public class KeyValue {
         }
     }
 
+    /**
+     * Handles the CAS operation to update a key only if it still has the expected version.
+     *
+     * @param key The key to update.
+     * @param expectedVersion The version the key must have, or "0" if the key must not exist.
+     * @param value The new value.
+     * @return A Response object with the new version, or an error if the version does not match.
+     */
+    public Response compareAndSet(String key, String expectedVersion, String value) {
+        long expected;
+        try {
+            expected = Long.parseLong(expectedVersion);
+        } catch (NumberFormatException e) {
+            return new Response("CAS","FAIL",
+                    "CAS operation failed. Version " + expectedVersion + " is not a number.");
+        }
+        VersionedValue current = latest(key);
+        long currentVersion = (current == null) ? 0 : current.getVersion();
+        if (currentVersion != expected) {
+            return new Response("CAS","FAIL",
+                    "CAS operation failed. Key " + key + " has version " + currentVersion
+                            + ", expected " + expected);
+        }
+        return new Response("CAS","SUCCESS",
+                "CAS operation successful for key " + key + " with value " + write(key, value));
+    }
+
+    /**
+     * Handles the PUT-IF-ABSENT operation to add a key only if it does not exist yet.
+     *
+     * @param key The key to add.
+     * @param value The value to associate with the key.
+     * @return A Response object with the new version, or an error with the current value if the key exists.
+     */
+    public Response putIfAbsent(String key, String value) {
+        VersionedValue current = latest(key);
+        if (current != null) {
+            return new Response("PUT-IF-ABSENT","FAIL",
+                    "PUT-IF-ABSENT operation failed. Key " + key + " exists with value " + current);
+        }
+        return new Response("PUT-IF-ABSENT","SUCCESS",
+                "PUT-IF-ABSENT operation successful for key " + key + " with value " + write(key, value));
+    }
+
+    /**
+     * Handles the INCR operation to add a number to an integer value on the server.
+     * A missing key is treated as 0.
+     *
+     * @param key The key to increment.
+     * @param delta The amount to add, which may be negative.
+     * @return A Response object with the new value and version, or an error if the value
+     *         or delta is not an integer or the result does not fit in a long.
+     */
+    public Response increment(String key, String delta) {
+        VersionedValue current = latest(key);
+        long amount;
+        long base;
+        try {
+            amount = Long.parseLong(delta);
+            base = (current == null) ? 0 : Long.parseLong(current.getValue());
+        } catch (NumberFormatException e) {
+            return new Response("INCR","FAIL",
+                    "INCR operation failed. Key " + key + " or delta " + delta + " is not an integer.");
+        }
+        long result;
+        try {
+            result = Math.addExact(base, amount);
+        } catch (ArithmeticException e) {
+            return new Response("INCR","FAIL",
+                    "INCR operation failed. Adding " + delta + " to key " + key + " overflows.");
+        }
+        return new Response("INCR","SUCCESS",
+                "INCR operation successful for key " + key + " with value "
+                        + write(key, String.valueOf(result)));
+    }
+
+    /**
+     * Handles the APPEND operation to add a suffix to a value on the server.
+     * A missing key is created with the suffix as its value.
+     *
+     * @param key The key to append to.
+     * @param suffix The text to append.
+     * @return A Response object with the new value and version.
+     */
+    public Response append(String key, String suffix) {
+        VersionedValue current = latest(key);
+        String value = (current == null) ? suffix : current.getValue() + suffix;
+        return new Response("APPEND","SUCCESS",
+                "APPEND operation successful for key " + key + " with value " + write(key, value));
+    }
+
+    /**
+     * Handles the TXN operation, which applies a list of operations atomically.
+     * Supported operations are "CHECK key value", "VERSION key version" and "ABSENT key" (conditions),
+     * "GET key", "PUT key value" and "DELETE key". Operations run in order against
+     * a private view of the store, so later operations see the writes of earlier ones.
+     * If any operation fails, the transaction is aborted and no write is applied;
+     * otherwise all writes are applied together.
+     *
+     * @param operations The operations of the transaction, each as a space separated string.
+     * @return A Response object with the result of every operation,
+     *         or the reason the transaction was aborted.
+     */
+    public Response transaction(String[] operations) {
+        if (operations.length > MAX_TXN_OPERATIONS) {
+            return new Response("TXN","FAIL",
+                    "TXN operation failed. At most " + MAX_TXN_OPERATIONS + " operations are allowed");
+        }
+        // Pending writes of this transaction; a null value marks a deleted key
+        Map<String, String> staged = new HashMap<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < operations.length; i++) {
+            String[] op = operations[i].trim().split(" ");
+            Response result = stage(op, staged);
+            if (result == null) {
+                return new Response("TXN","FAIL",
+                        "Transaction aborted, malformed operation " + (i + 1) + ": " + operations[i].trim());
+            }
+            results.add(result.toString());
+            if (result.getStatus().equals("FAIL")) {
+                return new Response("TXN","FAIL",
+                        "Transaction aborted at operation " + (i + 1) + ": " + String.join("; ", results));
+            }
+        }
+        for (Map.Entry<String, String> staging : staged.entrySet()) {
+            if (staging.getValue() == null) {
+                remove(staging.getKey());
+            } else {
+                write(staging.getKey(), staging.getValue());
+            }
+        }
+        return new Response("TXN","SUCCESS",
+                results.size() + " operations committed: " + String.join("; ", results));
+    }
+
+    /**
+     * Runs one transaction operation against the staged writes without touching the store.
+     *
+     * @return a Response object with the result of the operation, or null if the operation is malformed
+     */
+    private Response stage(String[] op, Map<String, String> staged) {
+        String key = op.length > 1 ? op[1] : null;
+        String current = (key == null) ? null
+                : staged.containsKey(key) ? staged.get(key) : valueOf(latest(key));
+        switch (op[0]) {
+            case "CHECK":
+                if (op.length != 3) {
+                    return null;
+                }
+                return op[2].equals(current)
+                        ? new Response("CHECK","SUCCESS", key + "=" + current)
+                        : new Response("CHECK","FAIL", "key " + key + " has value " + current + ", expected " + op[2]);
+            case "VERSION":
+                if (op.length != 3) {
+                    return null;
+                }
+                // Versions are only assigned at commit, so a key written earlier in
+                // this transaction has no version to compare against
+                if (staged.containsKey(key)) {
+                    return new Response("VERSION","FAIL", "key " + key + " was written earlier in this transaction");
+                }
+                VersionedValue stored = latest(key);
+                String version = (stored == null) ? "0" : String.valueOf(stored.getVersion());
+                return version.equals(op[2])
+                        ? new Response("VERSION","SUCCESS", key + " version=" + version)
+                        : new Response("VERSION","FAIL", "key " + key + " has version " + version
+                                + ", expected " + op[2]);
+            case "ABSENT":
+                if (op.length != 2) {
+                    return null;
+                }
+                return current == null
+                        ? new Response("ABSENT","SUCCESS", key)
+                        : new Response("ABSENT","FAIL", "key " + key + " exists");
+            case "GET":
+                if (op.length != 2) {
+                    return null;
+                }
+                // A missing key is a valid read result and does not abort the transaction
+                return current != null
+                        ? new Response("GET","SUCCESS", key + "=" + current)
+                        : new Response("GET","MISSING", key);
+            case "PUT":
+                if (op.length != 3) {
+                    return null;
+                }
+                staged.put(key, op[2]);
+                return new Response("PUT","SUCCESS", key + "=" + op[2]);
+            case "DELETE":
+                if (op.length != 2) {
+                    return null;
+                }
+                if (current == null) {
+                    return new Response("DELETE","FAIL", "key " + key + " not found");
+                }
+                staged.put(key, null);
+                return new Response("DELETE","SUCCESS", key);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the plain value of a stored entry, or null if there is none.
+     */
+    private String valueOf(VersionedValue versioned) {
+        return (versioned == null) ? null : versioned.getValue();
+    }
+
+    /**
+     * @return the log position of the last command applied to the store
+     */
+    public long getCommittedPosition() {
+        return snapshots.getCommittedPosition();
+    }
+
+    /**
+     * Writes the committed state of the store for an observer that synchronizes with
+     * this replica: the last version given out, then one "key value version" line per
+     * key. Must be called with the learner's lock held, so no command is half applied.
+     *
+     * @return the state of the store, to be installed with {@link #restore(String)}
+     */
+    public String dump() {
+        StringBuilder state = new StringBuilder().append(lastVersion);
+        for (Map.Entry<String, VersionedValue> entry : store.entrySet()) {
+            VersionedValue current = entry.getValue();
+            if (!current.isDeleted()) {
+                state.append('\n').append(entry.getKey()).append(' ').append(current.getValue())
+                        .append(' ').append(current.getVersion());
+            }
+        }
+        return state.toString();
+    }
+
+    /**
+     * Replaces the contents of the store with a state written by {@link #dump()} on
+     * another replica, as part of the command being applied. Keys keep the versions
+     * they have on that replica; only keys whose value or version differ are written,
+     * and keys missing from the state are deleted, so the applied changes are exactly
+     * the difference between the two replicas.
+     *
+     * @param state the state of the other replica
+     */
+    public void restore(String state) {
+        String[] lines = state.split("\n");
+        Map<String, String[]> entries = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] entry = lines[i].split(" ");
+            entries.put(entry[0], entry);
+        }
+        for (String key : store.keySet()) {
+            if (latest(key) != null && !entries.containsKey(key)) {
+                remove(key);
+            }
+        }
+        for (String[] entry : entries.values()) {
+            VersionedValue current = latest(entry[0]);
+            long version = Long.parseLong(entry[2]);
+            if (current == null || current.getVersion() != version || !current.getValue().equals(entry[1])) {
+                VersionedValue restored = new VersionedValue(entry[1], version, applyingPosition, trimmed(entry[0]));
+                store.put(entry[0], restored);
+                appliedChanges.put(entry[0], restored);
+            }
+        }
+        lastVersion = Long.parseLong(lines[0]);
+    }
+
+    /**
+     * Handles the SNAPSHOT operation to pin a snapshot at the committed log position.
+     * Reads with the returned id see the store as of that position, no matter how many
+     * writes are applied meanwhile, until the snapshot is released or unused for
+     * SnapshotRegistry.LEASE_MILLIS. At most SnapshotRegistry.MAX_SNAPSHOTS can be pinned at once.
+     *
+     * @return A Response object with the snapshot id and its log position, or an error if too many are pinned.
+     */
+    public Response snapshot() {
+        long id = snapshots.pin();
+        if (id < 0) {
+            return new Response("SNAPSHOT","FAIL",
+                    "SNAPSHOT operation failed. " + SnapshotRegistry.MAX_SNAPSHOTS
+                            + " snapshots are pinned already, release one first");
+        }
+        return new Response("SNAPSHOT","SUCCESS",
+                "id=" + id + " position=" + snapshots.use(id));
+    }
+
+    /**
+     * Handles the RELEASE operation to unpin a snapshot so its old versions can be collected.
+     *
+     * @param snapshotId The id returned by SNAPSHOT.
+     * @return A Response object indicating whether the snapshot was pinned.
+     */
+    public Response release(String snapshotId) {
+        try {
+            long id = Long.parseLong(snapshotId);
+            // Temporary snapshots of running reads have negative ids and cannot be released by clients
+            if (id > 0 && snapshots.release(id)) {
+                return new Response("RELEASE","SUCCESS", "Snapshot " + snapshotId + " released");
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        return new Response("RELEASE","FAIL", "Snapshot " + snapshotId + " is unknown or expired");
+    }
+
+    /**
+     * Handles the READ operation to read several keys at a pinned snapshot.
+     *
+     * @param snapshotId The id returned by SNAPSHOT.
+     * @param keys The keys to read.
+     * @return A Response object with "k=v" for every existing key followed by "MISSING"
+     *         and the keys that did not exist, or an error if the snapshot is unknown.
+     */
+    public Response read(String snapshotId, String[] keys) {
+        if (keys.length > MAX_READ_KEYS) {
+            return new Response("READ","FAIL",
+                    "READ operation failed. At most " + MAX_READ_KEYS + " keys are allowed");
+        }
+        return atSnapshot("READ", snapshotId, position -> {
+            StringBuilder found = new StringBuilder("position=" + position);
+            StringBuilder missing = new StringBuilder();
+            for (String key : keys) {
+                VersionedValue head = store.get(key);
+                VersionedValue versioned = (head == null) ? null : head.at(position);
+                if (versioned != null) {
+                    found.append(' ').append(key).append('=').append(versioned.getValue());
+                } else {
+                    missing.append(' ').append(key);
+                }
+            }
+            if (missing.length() > 0) {
+                found.append(" MISSING").append(missing);
+            }
+            return new Response("READ","SUCCESS", found.toString());
+        });
+    }
+
+    /**
+     * Handles the SCAN operation to list the keys in the range [start, end) in key order.
+     * At most {@code limit} entries are returned; if more keys remain in the range the
+     * description ends with "NEXT key", which the client passes as the start of the next page.
+     * Every page is read at a single snapshot; passing the id of a pinned snapshot makes
+     * all pages of a scan consistent with each other.
+     *
+     * @param start The first key of the range (inclusive).
+     * @param end The end of the range (exclusive), or "*" for no upper bound.
+     * @param limit The maximum number of entries in this page.
+     * @param snapshotId The id returned by SNAPSHOT, or null to read the latest committed state.
+     * @return A Response object with the entries of the page, or an error if the arguments are invalid.
+     */
+    public Response scan(String start, String end, String limit, String snapshotId) {
+        int pageSize = parsePageSize(limit);
+        if (pageSize < 0) {
+            return new Response("SCAN","FAIL",
+                    "SCAN operation failed. Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        NavigableMap<String, VersionedValue> range;
+        if (end.equals(OPEN_END)) {
+            range = store.tailMap(start, true);
+        } else if (start.compareTo(end) <= 0) {
+            range = store.subMap(start, true, end, false);
+        } else {
+            return new Response("SCAN","FAIL",
+                    "SCAN operation failed. Start key " + start + " is after end key " + end);
+        }
+        return atSnapshot("SCAN", snapshotId,
+                position -> new Response("SCAN","SUCCESS", page(range, pageSize, null, position)));
+    }
+
+    /**
+     * Handles the PREFIX operation to list the keys starting with a prefix in key order.
+     * Paging and snapshots work like SCAN: when more keys remain, the description ends
+     * with "NEXT key" and the client resumes by passing that key as {@code from}.
+     *
+     * @param prefix The prefix every returned key starts with.
+     * @param limit The maximum number of entries in this page.
+     * @param from The key to resume from (inclusive), or null to start at the prefix itself.
+     * @param snapshotId The id returned by SNAPSHOT, or null to read the latest committed state.
+     * @return A Response object with the entries of the page, or an error if the arguments are invalid.
+     */
+    public Response prefix(String prefix, String limit, String from, String snapshotId) {
+        int pageSize = parsePageSize(limit);
+        if (pageSize < 0) {
+            return new Response("PREFIX","FAIL",
+                    "PREFIX operation failed. Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        String start = (from == null || from.compareTo(prefix) < 0) ? prefix : from;
+        return atSnapshot("PREFIX", snapshotId, position -> new Response("PREFIX","SUCCESS",
+                page(store.tailMap(start, true), pageSize, prefix, position)));
+    }
+
+    /**
+     * Runs a read at a snapshot. Without a snapshot id a temporary snapshot is pinned at
+     * the committed position for the duration of the read, so that the versions it needs
+     * are not collected while it runs.
+     *
+     * @param operation the operation name used in error responses
+     * @param snapshotId the id returned by SNAPSHOT, or null
+     * @param read the read to run at the snapshot's log position
+     * @return the Response of the read, or an error if the snapshot is unknown or expired
+     */
+    private Response atSnapshot(String operation, String snapshotId, LongFunction<Response> read) {
+        long id;
+        try {
+            id = (snapshotId == null) ? snapshots.pinTemporary() : Long.parseLong(snapshotId);
+        } catch (NumberFormatException e) {
+            return new Response(operation,"FAIL", "Snapshot " + snapshotId + " is not a number");
+        }
+        try {
+            long position = snapshots.use(id);
+            if (position < 0) {
+                return new Response(operation,"FAIL", "Snapshot " + snapshotId + " is unknown or expired");
+            }
+            return read.apply(position);
+        } finally {
+            if (snapshotId == null) {
+                snapshots.release(id);
+            }
+        }
+    }
+
+    /**
+     * Renders up to {@code pageSize} entries of a sorted range, as of a log position,
+     * as "k=v" pairs followed by "NEXT key" if the range holds more entries than fit in the page.
+     * When {@code prefix} is not null the page stops at the first key without that prefix.
+     */
+    private String page(NavigableMap<String, VersionedValue> range, int pageSize, String prefix, long position) {
+        StringBuilder entries = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<String, VersionedValue> entry : range.entrySet()) {
+            if (prefix != null && !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            VersionedValue versioned = entry.getValue().at(position);
+            if (versioned == null) {
+                continue;
+            }
+            if (count == pageSize) {
+                entries.append(" NEXT ").append(entry.getKey());
+                break;
+            }
+            entries.append(' ').append(entry.getKey()).append('=').append(versioned.getValue());
+            count++;
+        }
+        return count + " entries:" + entries;
+    }
+
+    /**
+     * Parses a page size argument.
+     *
+     * @return the page size, or -1 if it is not a number between 1 and MAX_PAGE_SIZE
+     */
+    private int parsePageSize(String limit) {
+        try {
+            int pageSize = Integer.parseInt(limit);
+            return (pageSize >= 1 && pageSize <= MAX_PAGE_SIZE) ? pageSize : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
 }
@@ -0,0 +1,100 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ObserverLink sends the values a voter applies to one attached observer.
+ *
+ * Values are queued in the order the voter applied them and sent by a thread of
+ * their own, so the learner never waits for an observer. An observer that falls
+ * MAX_BACKLOG values behind, or whose call fails or does not return within the
+ * RMI response timeout, is detached: its queue is dropped and it has to register
+ * again, which transfers the voter's current state to it.
+ */
+public class ObserverLink {
+    /** Largest number of values queued for an observer before it is detached */
+    static final int MAX_BACKLOG = 1000;
+
+    private final SendMessage observer;
+
+    /** Identifies the run of the voter in the values it sends */
+    private final long stream;
+
+    /** Sends the queued values one at a time, in the order they were queued */
+    private final ThreadPoolExecutor sender;
+
+    /** True once the observer was detached; nothing is sent after that */
+    private volatile boolean detached = false;
+
+    /**
+     * Creates a link and starts its sender thread.
+     *
+     * @param observer the observer to send values to
+     * @param stream identifies the run of the voter
+     */
+    public ObserverLink(SendMessage observer, long stream) {
+        this.observer = observer;
+        this.stream = stream;
+        this.sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_BACKLOG), runnable -> {
+            Thread thread = new Thread(runnable, "observer-link");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a value for the observer without waiting for it. Called by the learner
+     * with the lock held, so values are queued in log order.
+     *
+     * @param position the log position at which the voter applied the value
+     * @param value the applied value
+     */
+    public void send(long position, String value) {
+        if (detached) {
+            return;
+        }
+        try {
+            sender.execute(() -> deliver(position, value));
+        } catch (RejectedExecutionException e) {
+            detach("it fell " + MAX_BACKLOG + " values behind");
+        }
+    }
+
+    /**
+     * Sends one value; any failure, including a timeout, detaches the observer.
+     */
+    private void deliver(long position, String value) {
+        if (detached) {
+            return;
+        }
+        try {
+            observer.replicate(stream, position, value);
+        } catch (Exception e) {
+            detach("sending failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops sending to the observer and drops the values still queued.
+     *
+     * @param reason why the observer is detached, for the log
+     */
+    public void detach(String reason) {
+        if (!detached) {
+            detached = true;
+            sender.shutdownNow();
+            ServerLogger.logWarning("Detached observer, " + reason);
+        }
+    }
+
+    /**
+     * @return true once the observer was detached
+     */
+    public boolean isDetached() {
+        return detached;
+    }
+}
@@ -0,0 +1,230 @@
+package server;
+
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.rmi.server.ServerNotActiveException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Peer is a lazily connected reference to another server of the cluster.
+ * It looks up the server's RMI stub in the background and keeps retrying with
+ * exponential backoff until the server is up, so a server can start before its peers.
+ * When a call fails because the connection was lost, e.g. because the peer went down
+ * and its old stub is no longer valid, the stub is dropped and looked up again.
+ * Reconnecting only restores communication: a peer that restarted has lost its store
+ * and does not catch up on the values chosen while it was gone.
+ *
+ * While the peer is not connected every call fails with a RemoteException,
+ * which the proposer already treats as a server that did not answer.
+ *
+ * A peer that is alive but stops responding, e.g. because its process is suspended,
+ * would otherwise block a call forever. Calls give up after RESPONSE_TIMEOUT_MILLIS
+ * and the timeout is handled like any other lost connection.
+ */
+public class Peer implements SendMessage {
+    /** Delay before the first retry of a failed lookup */
+    private static final long MIN_RETRY_MILLIS = 200;
+
+    /** Longest delay between two lookups of a peer that is down */
+    private static final long MAX_RETRY_MILLIS = 5000;
+
+    /** Longest time a call to a peer waits for the response */
+    static final long RESPONSE_TIMEOUT_MILLIS = 5000;
+
+    private final ClusterConfig.Node node;
+    private final ScheduledExecutorService executor;
+
+    /** The peer's stub, or null while it is not connected */
+    private volatile SendMessage stub;
+
+    /** True while a lookup is scheduled or running */
+    private final AtomicBoolean connecting = new AtomicBoolean(false);
+
+    /** Delay before the next lookup if the current one fails */
+    private long retryMillis = MIN_RETRY_MILLIS;
+
+    /**
+     * Creates a peer. No connection is made until {@link #connect()} is called.
+     *
+     * @param node the server to connect to
+     * @param executor the executor that runs lookups and retries
+     */
+    public Peer(ClusterConfig.Node node, ScheduledExecutorService executor) {
+        this.node = node;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts connecting to the peer in the background unless a lookup is already under way.
+     */
+    public void connect() {
+        if (connecting.compareAndSet(false, true)) {
+            executor.execute(this::lookup);
+        }
+    }
+
+    /**
+     * @return true if the peer's stub is currently known
+     */
+    public boolean isConnected() {
+        return stub != null;
+    }
+
+    /**
+     * Looks up the peer's stub and schedules another attempt with a longer delay if it fails.
+     */
+    private void lookup() {
+        try {
+            stub = (SendMessage) Naming.lookup(node.getUrl());
+            retryMillis = MIN_RETRY_MILLIS;
+            connecting.set(false);
+            ServerLogger.logInfo("Connected to peer " + node);
+        } catch (Exception e) {
+            long delay = retryMillis;
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            executor.schedule(this::lookup, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the stub of a connected peer.
+     *
+     * @throws RemoteException if the peer is not connected yet; a lookup is started
+     */
+    private SendMessage stub() throws RemoteException {
+        SendMessage current = stub;
+        if (current == null) {
+            connect();
+            throw new ConnectException("Peer " + node.getName() + " is not connected");
+        }
+        return current;
+    }
+
+    /**
+     * Limits how long outgoing RMI calls wait for a response, and for the handshake of a
+     * new connection, to RESPONSE_TIMEOUT_MILLIS, unless a limit was configured on the
+     * command line. Must be called before the first remote call is made, since the RMI
+     * transport only reads these settings once.
+     */
+    static void configureResponseTimeout() {
+        for (String property : new String[] {
+                "sun.rmi.transport.tcp.responseTimeout", "sun.rmi.transport.tcp.handshakeTimeout"}) {
+            if (System.getProperty(property) == null) {
+                System.setProperty(property, String.valueOf(RESPONSE_TIMEOUT_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a call failed before the request reached the peer, so that it is
+     * safe to send the same request to another server. After any other failure, such as
+     * a timeout, the peer may have executed the request.
+     *
+     * @param e the exception of the call
+     * @return true if the peer never received the request
+     */
+    static boolean notSent(RemoteException e) {
+        return e instanceof ConnectException || e instanceof ConnectIOException;
+    }
+
+    /**
+     * Handles a failed call. Exceptions thrown by the peer itself, such as a simulated
+     * failure, leave the connection alone; anything else means the stub is no longer
+     * usable, so it is dropped and looked up again.
+     *
+     * @param failed the stub the call was made on
+     * @param e the exception of the call
+     * @return the exception, to be rethrown by the caller
+     */
+    private RemoteException failed(SendMessage failed, RemoteException e) {
+        if (!(e instanceof ServerException) && !(e instanceof ServerError)) {
+            if (stub == failed) {
+                stub = null;
+                ServerLogger.logWarning("Lost connection to peer " + node + ": " + e.getMessage());
+            }
+            connect();
+        }
+        return e;
+    }
+
+    @Override
+    public String sendMessage(String message) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.sendMessage(message);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public boolean prepare(int proposalNumber) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.prepare(proposalNumber);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public boolean accept(int proposalNumber, String value) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.accept(proposalNumber, value);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public String learn(String value) throws RemoteException, ServerNotActiveException {
+        SendMessage current = stub();
+        try {
+            return current.learn(value);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public String registerObserver(SendMessage observer) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.registerObserver(observer);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public boolean isAttached(SendMessage observer) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.isAttached(observer);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public String replicate(long stream, long position, String value) throws RemoteException {
+        SendMessage current = stub();
+        try {
+            return current.replicate(stream, position, value);
+        } catch (RemoteException e) {
+            throw failed(current, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return node.getName();
+    }
+}
@@ -51,4 +51,41 @@ public interface SendMessage extends Remote {
      * @throws ServerNotActiveException If the server is not currently active
      */
     String learn(String value) throws RemoteException, ServerNotActiveException;
+
+    /**
+     * Attaches a non-voting observer. The observer never takes part in the prepare
+     * and accept phases; it receives every value this server applies from now on.
+     * A previous attachment of the same observer is replaced.
+     *
+     * @param observer The observer replica to send applied values to
+     * @return The state the values are sent on top of: a first line "stream position" with
+     *         the run of this voter and its log position, then the store as written by
+     *         {@link KeyValue#dump()}
+     * @throws RemoteException If there is a communication error or this server is an observer itself
+     */
+    String registerObserver(SendMessage observer) throws RemoteException;
+
+    /**
+     * Checks whether an observer is still attached, i.e. it was not detached because a
+     * value could not be sent to it in time.
+     *
+     * @param observer The observer replica
+     * @return true if the observer still receives every value this server applies
+     * @throws RemoteException If there is a communication error or this server is an observer itself
+     */
+    boolean isAttached(SendMessage observer) throws RemoteException;
+
+    /**
+     * Sends a value applied by a voter to an observer. Values arrive in the order the
+     * voter applied them, numbered with its log position, so the observer can tell when
+     * it missed one.
+     *
+     * @param stream Identifies the run of the voter that sends the value
+     * @param position The log position at which the voter applied the value
+     * @param value The applied value
+     * @return The result of processing the value, or null if it was already received
+     * @throws RemoteException If there is a communication error, this server is not an observer,
+     *                         or the observer does not follow this run of the voter
+     */
+    String replicate(long stream, long position, String value) throws RemoteException;
 }
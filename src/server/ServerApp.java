@@ -1,8 +1,9 @@
 package server;
 
-import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * ServerApp is the entry point for starting the RMI server in the distributed key-value store system.
@@ -10,53 +11,76 @@ import java.rmi.registry.Registry;
  * 1. Initialization of the RMI registry
  * 2. Binding the server's message handling service
  * 3. Establishing connections with other servers in the distributed system
- * 
- * The server supports a cluster of up to 5 servers (Server1 through Server5),
- * each running on the default RMI port 1099.
+ *
+ * The servers of the cluster are read from a {@link ClusterConfig}. Without further
+ * arguments the cluster consists of the voters Server1 through Server5, each running
+ * on the default RMI port 1099. Any number of observers can be added to the configuration;
+ * an observer copies the store of a voter and follows it.
+ *
+ * Peers are connected lazily and in parallel: a server serves requests right after
+ * binding its own service, and proposals succeed as soon as a majority of voters is
+ * reachable. Peers that are down are reconnected in the background, and calls to a peer
+ * that stops responding time out. The store lives in
+ * memory and is not transferred between servers, so a server that restarts on its own
+ * comes back with the initial store; the whole cluster has to be restarted together.
  */
 public class ServerApp {
-    /** Default RMI port number used for server communication */
-    private static final int PORT = 1099;
+    /** Number of threads looking up peers in parallel */
+    private static final int PEER_THREADS = 4;
 
     /**
      * Main entry point for starting the server application.
-     * 
+     *
      * The method performs the following steps:
-     * 1. Creates a new TCPHandler instance for message processing
-     * 2. Initializes the RMI registry on the default port
-     * 3. Binds the server's SendMessage service to the registry
-     * 4. Validates the server name argument
-     * 5. Establishes connections with other servers in the cluster
+     * 1. Reads the cluster configuration from the arguments
+     * 2. Creates a new TCPHandler instance for message processing
+     * 3. Initializes the RMI registry on the server's port
+     * 4. Binds the server's SendMessage service to the registry
+     * 5. Starts connecting to the voters in the cluster in the background
      *
      * @param args Command line arguments:
-     *             - args[0]: Server name (must be in format "Server[1-5]")
+     *             - args[0]: Server name, which must appear in the cluster configuration
+     *             - optional: "--config file" or "--voters a,b,c [--observers x,y]"
      * @throws Exception If any error occurs during server initialization or connection setup
      */
     public static void main(String[] args) {
+        // Do not let a peer that stopped responding block calls forever
+        Peer.configureResponseTimeout();
         try {
+            ClusterConfig config;
+            try {
+                config = ClusterConfig.fromArgs(args);
+            } catch (IllegalArgumentException e) {
+                ServerLogger.logWarning("Error: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            ClusterConfig.Node self = config.getSelf();
+
             // Initialize the server's handler for incoming messages
-            TCPHandler server = new TCPHandler();
-            // Create an RMI registry on the default port 1099
-            Registry registry = LocateRegistry.createRegistry(PORT);
+            TCPHandler server = new TCPHandler(self.isObserver());
+            // Create an RMI registry on the server's port
+            Registry registry = LocateRegistry.createRegistry(self.getPort());
             // Bind the server's SendMessage service to the RMI registry
             registry.rebind("SendMessage", server);
 
-            // Validate server name argument
-            if (args.length != 1 || !args[0].matches("Server[1-5]")) {
-                ServerLogger.logWarning("Error: Please provide a valid server name (Server1-Server5).");
-                System.exit(1);
-            }
-
-            // Connect to other servers in the distributed system
-            for (int i = 1; i <= 5; i++) {
-                // Skip connecting to itself based on the server name in the arguments
-                if (!args[0].equals("Server" + i)) {
-                    // Look up other servers using RMI naming service
-                    SendMessage otherServer = (SendMessage) Naming.lookup("rmi://Server" + i + ":" + PORT + "/SendMessage");
+            // Connect to the voters of the distributed system without waiting for them
+            ScheduledExecutorService peerExecutor = Executors.newScheduledThreadPool(PEER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "peer-connector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (ClusterConfig.Node node : config.getVoters()) {
+                // Skip connecting to itself
+                if (node != self) {
+                    Peer peer = new Peer(node, peerExecutor);
                     // Add the other server to the current server's list for distributed communication
-                    server.addServer(otherServer);
+                    server.addServer(peer);
+                    peer.connect();
                 }
             }
+            server.start();
+            ServerLogger.logInfo("Server " + self + " started");
 
         } catch (Exception e) {
             ServerLogger.logError("Server creation error: " + e.getMessage(), e);
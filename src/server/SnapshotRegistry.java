@@ -0,0 +1,184 @@
+package server;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SnapshotRegistry tracks the committed log position of the store and the snapshots
+ * readers have pinned. A pinned snapshot keeps the values current at its position
+ * from being garbage-collected until it is released or its lease runs out, so a
+ * client that disappears without releasing its snapshot cannot hold old values forever.
+ *
+ * The number of snapshots pinned by clients is capped, and pinned positions are counted
+ * in a sorted multiset, so the learner finds the oldest one in O(log n) after every
+ * command. Expired leases are swept at most once per SWEEP_INTERVAL_MILLIS.
+ */
+public class SnapshotRegistry {
+    /** Time after its last use at which a snapshot is released automatically */
+    public static final long LEASE_MILLIS = 60000;
+
+    /** Largest number of snapshots clients can pin at the same time */
+    public static final int MAX_SNAPSHOTS = 1000;
+
+    /** Shortest time between two sweeps for snapshots whose lease ran out */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    /**
+     * A pinned log position and the time it was last used.
+     */
+    private static class Snapshot {
+        private final long position;
+        private long lastUsedMillis;
+
+        Snapshot(long position, long lastUsedMillis) {
+            this.position = position;
+            this.lastUsedMillis = lastUsedMillis;
+        }
+    }
+
+    private final Map<Long, Snapshot> snapshots = new HashMap<>();
+    private long nextId = 1;
+
+    /** Number of snapshots pinned at each position */
+    private final TreeMap<Long, Integer> pinnedPositions = new TreeMap<>();
+
+    /** Number of snapshots pinned by clients, counted against MAX_SNAPSHOTS */
+    private int clientSnapshots = 0;
+
+    /** Time of the last sweep for expired snapshots */
+    private long lastSweepMillis = 0;
+
+    /** Log position of the last command whose writes are visible to readers */
+    private volatile long committedPosition = 0;
+
+    /**
+     * @return the log position of the last fully applied command
+     */
+    public long getCommittedPosition() {
+        return committedPosition;
+    }
+
+    /**
+     * Makes the writes of a command visible to new readers.
+     *
+     * @param position the log position of the command
+     */
+    public synchronized void commit(long position) {
+        committedPosition = position;
+    }
+
+    /**
+     * Pins a snapshot for a client at the committed position.
+     *
+     * @return the id of the new snapshot, or -1 if MAX_SNAPSHOTS snapshots are pinned already
+     */
+    public synchronized long pin() {
+        if (clientSnapshots >= MAX_SNAPSHOTS) {
+            sweep(System.currentTimeMillis());
+            if (clientSnapshots >= MAX_SNAPSHOTS) {
+                return -1;
+            }
+        }
+        clientSnapshots++;
+        return add(false);
+    }
+
+    /**
+     * Pins a snapshot for the duration of a single read. These are released right after
+     * the read and are not counted against MAX_SNAPSHOTS.
+     *
+     * @return the id of the new snapshot
+     */
+    public synchronized long pinTemporary() {
+        return add(true);
+    }
+
+    /**
+     * Registers a snapshot at the committed position.
+     */
+    private long add(boolean temporary) {
+        long id = temporary ? -nextId++ : nextId++;
+        snapshots.put(id, new Snapshot(committedPosition, System.currentTimeMillis()));
+        pinnedPositions.merge(committedPosition, 1, Integer::sum);
+        return id;
+    }
+
+    /**
+     * Drops a snapshot and its pinned position.
+     */
+    private void remove(long id, Snapshot snapshot) {
+        if (id > 0) {
+            clientSnapshots--;
+        }
+        pinnedPositions.computeIfPresent(snapshot.position, (position, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Looks up a snapshot and renews its lease.
+     *
+     * @param id the snapshot id
+     * @return the position of the snapshot, or -1 if it is unknown, released or expired
+     */
+    public synchronized long use(long id) {
+        Snapshot snapshot = snapshots.get(id);
+        long now = System.currentTimeMillis();
+        if (snapshot == null) {
+            return -1;
+        }
+        if (now - snapshot.lastUsedMillis > LEASE_MILLIS) {
+            snapshots.remove(id);
+            remove(id, snapshot);
+            return -1;
+        }
+        snapshot.lastUsedMillis = now;
+        return snapshot.position;
+    }
+
+    /**
+     * Releases a snapshot so its values can be garbage-collected.
+     *
+     * @param id the snapshot id
+     * @return true if the snapshot was pinned
+     */
+    public synchronized boolean release(long id) {
+        Snapshot snapshot = snapshots.remove(id);
+        if (snapshot == null) {
+            return false;
+        }
+        remove(id, snapshot);
+        return true;
+    }
+
+    /**
+     * Computes the oldest position any reader may still read at. Values that are not
+     * current at or after this position can be garbage-collected.
+     * Snapshots whose lease ran out are released here, at most once per SWEEP_INTERVAL_MILLIS.
+     *
+     * @return the oldest pinned position, or the committed position if nothing is pinned
+     */
+    public synchronized long horizon() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweepMillis >= SWEEP_INTERVAL_MILLIS) {
+            sweep(now);
+        }
+        return pinnedPositions.isEmpty() ? committedPosition
+                : Math.min(committedPosition, pinnedPositions.firstKey());
+    }
+
+    /**
+     * Releases every snapshot whose lease ran out.
+     */
+    private void sweep(long now) {
+        lastSweepMillis = now;
+        Iterator<Map.Entry<Long, Snapshot>> it = snapshots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Snapshot> entry = it.next();
+            if (now - entry.getValue().lastUsedMillis > LEASE_MILLIS) {
+                it.remove();
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
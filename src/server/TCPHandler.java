@@ -5,8 +5,14 @@ import java.rmi.server.RemoteServer;
 import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -16,6 +22,12 @@ import java.util.concurrent.locks.ReentrantLock;
  * 2. Manages the key-value store operations
  * 3. Handles server-to-server communication
  * 4. Implements failure simulation for testing purposes
+ *
+ * A TCPHandler runs either as a voter, which takes part in every Paxos phase, or as a
+ * non-voting observer, which follows the store of one voter. An observer starts with a
+ * copy of the voter's store and then receives every value the voter applies. It serves
+ * reads locally while it has received all of them, and forwards everything else to a
+ * voter, so read capacity can grow without making quorums larger.
  */
 public class TCPHandler extends UnicastRemoteObject implements SendMessage {
 
@@ -55,24 +67,110 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
     /** List of other servers in the distributed system */
     private List<SendMessage> otherServers;
 
+    /**
+     * Longest time an observer answers GET locally without learning a new value. This is
+     * a liveness check for an observer cut off from the voters, not a bound on staleness.
+     */
+    private static final long MAX_SILENCE_MILLIS = 5000;
+
+    /** True if this server is a non-voting observer */
+    private final boolean observer;
+
+    /** Observers attached to this voter; they receive every value it applies */
+    private final Map<SendMessage, ObserverLink> observers = new ConcurrentHashMap<>();
+
+    /** How often an observer checks that its voter still sends it values, and synchronizes again if not */
+    private static final long SYNC_INTERVAL_SECONDS = 5;
+
+    /** Time at which this server last learned a value */
+    private volatile long lastLearnedMillis = 0;
+
+    /** Identifies this run of a voter in the values it sends to observers */
+    private final long stream = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+    /** On an observer, the voter it follows, or null before it first synchronized */
+    private SendMessage upstream;
+
+    /** On an observer, the run of the voter it follows */
+    private long upstreamStream;
+
+    /** On an observer, the voter's log position of the last value received from it */
+    private long upstreamPosition;
+
+    /**
+     * True while this observer has every value its voter applied since it synchronized.
+     * Otherwise it forwards every read of the store to a voter until it synchronized again.
+     */
+    private volatile boolean inSync = false;
+
+    /** Read-only operations answered from the local replica without a consensus round */
+    private static final Set<String> LOCAL_READ_OPERATIONS = new HashSet<>(Arrays.asList(
+            "SCAN", "PREFIX", "SNAPSHOT", "READ", "RELEASE", "CHANGES", "STATS"));
+
+    /** Log position of the last value applied by the learner on this server */
+    private long appliedPosition = 0;
+
+    /** Committed write commands, streamed to subscribers with CHANGES; replaced when an observer resynchronizes */
+    private volatile ChangeFeed changeFeed = new ChangeFeed();
+
     /** Flag indicating if the server is currently running */
     private volatile boolean isRunning = true;
 
-    /** Scheduler for simulating server failures */
+    /** Scheduler for simulating server failures, or for synchronizing observers */
     private ScheduledExecutorService scheduler;
 
+    /** How often due TTL keys are collected and proposed for removal */
+    private static final long EXPIRY_INTERVAL_MILLIS = 1000;
+
+    /** Largest number of keys removed by a single EXPIRE command */
+    private static final int MAX_EXPIRE_BATCH = 100;
+
+    /**
+     * Number of Paxos rounds this server runs at the same time. Concurrent rounds from
+     * one proposer only invalidate each other's promises, so rounds are run one at a time.
+     */
+    private static final int MAX_CONCURRENT_PROPOSALS = 1;
+
+    /** Number of proposals that may wait for a round before new ones are rejected */
+    private static final int MAX_QUEUED_PROPOSALS = 64;
+
+    /** Longest time a proposal waits for a round before it is rejected */
+    private static final long MAX_QUEUE_WAIT_MILLIS = 2000;
+
+    /** Permits for running a Paxos round, handed out in arrival order */
+    private final Semaphore proposalSlots = new Semaphore(MAX_CONCURRENT_PROPOSALS, true);
+
+    /** Proposals that are running or waiting for a round */
+    private final AtomicInteger pendingProposals = new AtomicInteger();
+
+    /** Proposals that got a round since the server started */
+    private final AtomicLong admittedProposals = new AtomicLong();
+
+    /** Proposals rejected because too many were pending or the wait timed out */
+    private final AtomicLong rejectedProposals = new AtomicLong();
+
+    /** Scheduler that proposes EXPIRE commands for keys whose TTL ran out */
+    private final ScheduledExecutorService expiryScheduler = Executors.newSingleThreadScheduledExecutor();
+
     /**
      * Constructor initializes the key-value store, server list, and failure simulation.
-     * Sets up a scheduled task to randomly simulate server failures.
+     * Sets up a scheduled task to randomly simulate server failures on voters.
+     * Tasks that call back into the server are only started by {@link #start()}.
      *
+     * @param observer true to run as a non-voting observer
      * @throws RemoteException if RMI-related errors occur
      */
-    protected TCPHandler() throws RemoteException {
+    protected TCPHandler(boolean observer) throws RemoteException {
         super();
         this.keyValueStore = new KeyValue();
-        this.otherServers = new ArrayList<>();
-
+        // Peers are added while background tasks already iterate over the list
+        this.otherServers = new CopyOnWriteArrayList<>();
+        this.observer = observer;
         scheduler = Executors.newScheduledThreadPool(1);
+        if (observer) {
+            return;
+        }
+
         scheduler.scheduleAtFixedRate(() -> {
             if (Math.random() < 0.3) {
                 simulateFailure();
@@ -80,6 +178,20 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         }, 0, 10, TimeUnit.SECONDS);
     }
 
+    /**
+     * Starts the background tasks of the server once it is fully constructed: proposing
+     * EXPIRE commands for keys whose TTL ran out and, on observers, synchronizing with
+     * a voter and checking that it still sends every value.
+     */
+    public void start() {
+        // Start at a random offset so that voters rarely propose the same expirations at once
+        expiryScheduler.scheduleAtFixedRate(this::expireDueKeys,
+                (long) (Math.random() * EXPIRY_INTERVAL_MILLIS), EXPIRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (observer) {
+            scheduler.scheduleWithFixedDelay(this::syncWithVoters, 0, SYNC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
     /**
      * Simulates a server failure by:
      * 1. Setting the server to non-running state
@@ -101,8 +213,38 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         }
     }
 
+    /**
+     * Proposes EXPIRE commands for the keys whose TTL ran out, in batches of
+     * MAX_EXPIRE_BATCH keys. Keys are only removed once the EXPIRE command is chosen,
+     * so every replica drops them at the same point of the log. Observers only
+     * drain their timing wheel and wait for the voters' EXPIRE commands.
+     */
+    private void expireDueKeys() {
+        try {
+            if (!isRunning) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            List<String> due = keyValueStore.dueExpirations(now);
+            if (observer) {
+                return;
+            }
+            for (int start = 0; start < due.size(); start += MAX_EXPIRE_BATCH) {
+                List<String> batch = due.subList(start, Math.min(start + MAX_EXPIRE_BATCH, due.size()));
+                String result = admitAndPropose("EXPIRE " + String.join(" ", batch));
+                if (result == null || !result.startsWith("EXPIRE SUCCESS")) {
+                    // Try again on the next run; keys removed in the meantime are skipped then
+                    keyValueStore.scheduleExpirations(batch, now + EXPIRY_INTERVAL_MILLIS);
+                }
+            }
+        } catch (Exception e) {
+            ServerLogger.logError("Expiring keys failed", e);
+        }
+    }
+
     /**
      * Adds a reference to another server in the distributed system.
+     * Observers use their list of voters to forward requests.
      *
      * @param server the server to add to the list of known servers
      */
@@ -110,8 +252,156 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         otherServers.add(server);
     }
 
+    /**
+     * Attaches an observer that receives every value this voter applies from now on.
+     * The link is created under the learner's lock together with a copy of the store,
+     * so the observer gets exactly the values applied after that copy.
+     *
+     * @param observer the observer replica
+     * @return "stream position" on the first line, followed by the store
+     * @throws RemoteException if this server is an observer itself
+     */
+    @Override
+    public String registerObserver(SendMessage observer) throws RemoteException {
+        if (this.observer) {
+            throw new RemoteException("Observers cannot have observers.");
+        }
+        lock.lock();
+        try {
+            // Stubs of the same observer are equal, so a new registration replaces the old link
+            ObserverLink previous = observers.put(observer, new ObserverLink(observer, stream));
+            if (previous != null) {
+                previous.detach("it registered again");
+            }
+            ServerLogger.logInfo("Observer attached at position " + appliedPosition + ", "
+                    + observers.size() + " observer(s) in total");
+            return stream + " " + appliedPosition + "\n" + keyValueStore.dump();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether an observer still receives every value this voter applies.
+     *
+     * @param observer the observer replica
+     * @return true if the observer is attached and was not detached since
+     * @throws RemoteException if this server is an observer itself
+     */
+    @Override
+    public boolean isAttached(SendMessage observer) throws RemoteException {
+        if (this.observer) {
+            throw new RemoteException("Observers cannot have observers.");
+        }
+        ObserverLink link = observers.get(observer);
+        return link != null && !link.isDetached();
+    }
+
+    /**
+     * Keeps this observer synchronized with a voter. Runs periodically: while in sync it
+     * checks that its voter still sends it every value, e.g. because the voter restarted
+     * or detached it; otherwise it synchronizes with the first voter it can reach.
+     */
+    private void syncWithVoters() {
+        if (inSync) {
+            SendMessage current;
+            synchronized (this) {
+                current = upstream;
+            }
+            try {
+                if (current.isAttached(this)) {
+                    return;
+                }
+                markOutOfSync("the voter detached it");
+            } catch (RemoteException e) {
+                markOutOfSync("the voter could not be reached: " + e.getMessage());
+            }
+        }
+        for (SendMessage server : otherServers) {
+            if (resync(server)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registers this observer with a voter and replaces its store with the voter's.
+     * The replacement is applied like a command, so the change feed records every key
+     * that differed; the feed itself starts over, since the values in between were missed.
+     * Values the voter sends meanwhile wait on this server's monitor until it is done.
+     *
+     * @param server the voter to follow
+     * @return true if this observer is in sync again
+     */
+    private synchronized boolean resync(SendMessage server) {
+        String state;
+        try {
+            state = server.registerObserver(this);
+        } catch (RemoteException e) {
+            return false;
+        }
+        int header = state.indexOf('\n');
+        String[] position = state.substring(0, header).split(" ");
+        lock.lock();
+        try {
+            resetChangeFeed();
+            long local = ++appliedPosition;
+            keyValueStore.beginApply(local);
+            try {
+                keyValueStore.restore(state.substring(header + 1));
+            } finally {
+                keyValueStore.endApply();
+            }
+            Map<String, VersionedValue> changes = keyValueStore.getAppliedChanges();
+            if (!changes.isEmpty()) {
+                changeFeed.append(local, "SYNC " + server + " " + position[1], changes);
+            } else {
+                changeFeed.skip(local);
+            }
+            upstream = server;
+            upstreamStream = Long.parseLong(position[0]);
+            upstreamPosition = Long.parseLong(position[1]);
+            lastLearnedMillis = System.currentTimeMillis();
+            inSync = true;
+            ServerLogger.logInfo("Observer synchronized with " + server + " at position " + position[1]
+                    + ", " + changes.size() + " key(s) changed");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops answering reads locally after a missed value until the observer has
+     * synchronized again. The change feed starts over right away, so subscribers
+     * are told that events were missed instead of waiting on a feed with a gap.
+     */
+    private void markOutOfSync(String reason) {
+        lock.lock();
+        try {
+            if (inSync) {
+                inSync = false;
+                resetChangeFeed();
+                ServerLogger.logWarning("Observer out of sync, " + reason + "; forwarding all reads until it synchronized again");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the change feed with an empty one in a new epoch. Must be called with the lock held.
+     */
+    private void resetChangeFeed() {
+        changeFeed = new ChangeFeed(appliedPosition);
+    }
+
     /**
      * Handles incoming client requests by initiating the Paxos consensus process.
+     * Range reads (SCAN, PREFIX), snapshot reads (SNAPSHOT, READ, RELEASE) and change
+     * feed reads (CHANGES) do not modify the store and are answered from the local
+     * replica without a consensus round or the learner's lock. Observers never propose; see {@link #observe}.
+     * Everything else is proposed under admission control; see {@link #admitAndPropose}.
      *
      * @param message the client request message
      * @return the result of the operation
@@ -120,12 +410,128 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
     @Override
     public String sendMessage(String message) throws RemoteException {
         try {
-            return propose(message);
+            if (observer) {
+                return observe(message);
+            }
+            if (isLocalRead(message.split(" ")[0])) {
+                return handleRequest(message, RemoteServer.getClientHost());
+            }
+            return admitAndPropose(message);
         } catch (ServerNotActiveException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Runs a proposal under admission control. At most MAX_CONCURRENT_PROPOSALS rounds
+     * run at once and at most MAX_QUEUED_PROPOSALS more wait for a round. A proposal
+     * arriving when the queue is full, or waiting longer than MAX_QUEUE_WAIT_MILLIS,
+     * gets a BUSY response right away, so a burst of requests cannot pile up rounds
+     * that keep invalidating each other.
+     *
+     * @param message the value to propose
+     * @return the result of the consensus process, or a BUSY response
+     * @throws RemoteException if RMI-related errors occur
+     * @throws ServerNotActiveException if the server is not active
+     */
+    private String admitAndPropose(String message) throws RemoteException, ServerNotActiveException {
+        String operation = message.split(" ")[0];
+        int pending = pendingProposals.incrementAndGet();
+        try {
+            if (pending > MAX_CONCURRENT_PROPOSALS + MAX_QUEUED_PROPOSALS) {
+                return reject(operation, pending);
+            }
+            try {
+                if (!proposalSlots.tryAcquire(MAX_QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return reject(operation, pending);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return reject(operation, pending);
+            }
+            try {
+                admittedProposals.incrementAndGet();
+                return propose(message);
+            } finally {
+                proposalSlots.release();
+            }
+        } finally {
+            pendingProposals.decrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a rejected proposal and builds the BUSY response for it.
+     */
+    private String reject(String operation, int pending) {
+        rejectedProposals.incrementAndGet();
+        return new Response(operation,"BUSY",
+                "Server busy with " + pending + " pending proposals, retry later").toString();
+    }
+
+    /**
+     * Handles the STATS operation with the admission control counters of this server.
+     *
+     * @return a Response object with the queue depth and the admitted and rejected proposals
+     */
+    private Response stats() {
+        int pending = pendingProposals.get();
+        int running = MAX_CONCURRENT_PROPOSALS - proposalSlots.availablePermits();
+        return new Response("STATS","SUCCESS",
+                "running=" + running
+                        + " queued=" + Math.max(pending - running, 0)
+                        + " admitted=" + admittedProposals.get()
+                        + " rejected=" + rejectedProposals.get()
+                        + " appliedPosition=" + keyValueStore.getCommittedPosition()
+                        + (observer ? " inSync=" + inSync : ""));
+    }
+
+    /**
+     * Checks whether an operation is a read-only query served locally.
+     *
+     * @param operation the first token of the client request
+     * @return true for SCAN, PREFIX, SNAPSHOT, READ, RELEASE, CHANGES and STATS
+     */
+    private boolean isLocalRead(String operation) {
+        return LOCAL_READ_OPERATIONS.contains(operation);
+    }
+
+    /**
+     * Handles a client request on an observer. While the observer is in sync, SCAN, PREFIX
+     * and snapshot reads are answered from the local replica, and so is GET if a value was
+     * learned within the last MAX_SILENCE_MILLIS; a forwarded GET is learned by this observer
+     * as well, which keeps an idle cluster answering locally. From a missed value until the
+     * observer synchronized again, every read of the store is forwarded. CHANGES and STATS
+     * describe this server and are always answered locally. All writes are forwarded to a voter.
+     * A request is only sent to the next voter if the previous one never received it.
+     *
+     * @param message the client request message
+     * @return the result of the operation
+     * @throws ServerNotActiveException if not called from an RMI client
+     */
+    private String observe(String message) throws ServerNotActiveException {
+        String operation = message.split(" ")[0];
+        boolean live = System.currentTimeMillis() - lastLearnedMillis <= MAX_SILENCE_MILLIS;
+        boolean local = operation.equals("CHANGES") || operation.equals("STATS")
+                || (inSync && (isLocalRead(operation) || (operation.equals("GET") && live)));
+        if (local) {
+            return handleRequest(message, RemoteServer.getClientHost());
+        }
+        for (SendMessage server : otherServers) {
+            try {
+                return server.sendMessage(message);
+            } catch (RemoteException e) {
+                ServerLogger.logWarning("Forwarding to voter failed: " + e.getMessage());
+                if (!Peer.notSent(e)) {
+                    // The voter may have run the request, so sending it again could apply it twice
+                    return new Response(operation,"FAIL",
+                            "Voter did not answer, the request may or may not have been applied").toString();
+                }
+            }
+        }
+        return new Response(operation,"FAIL","Observer could not reach any voter").toString();
+    }
+
     /**
      * Implements the Paxos proposer role by:
      * 1. Generating a unique proposal number
@@ -164,22 +570,27 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
             ServerLogger.logError("Prepare failed on server", e);
         }
 
-        majority = agreeServer.size() > otherServers.size() / 2;
+        majority = agreeServer.size() >= quorum();
 
         if (!majority) {
             return fail.toString();
         }
 
         // Accept Phase: Get acceptances from servers that promised
+        int accepted = 0;
         for (SendMessage server : agreeServer) {
             try {
                 if (!server.accept(proposalNumber, value)) {
                     return fail.toString();
                 }
+                accepted++;
             } catch (Exception e) {
                 ServerLogger.logWarning("Accept failed on server");
             }
         }
+        if (accepted < quorum()) {
+            return fail.toString();
+        }
 
         // Learn Phase: Broadcast the chosen value to all servers
         for (SendMessage server : otherServers) {
@@ -193,6 +604,17 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         return this.learn(value);
     }
 
+    /**
+     * Computes the number of voters that form a majority. The proposer itself counts
+     * as a voter, so with N voters in the cluster a proposal needs N / 2 + 1 of them.
+     *
+     * @return the smallest number of promises a proposal needs
+     */
+    private int quorum() {
+        int voters = otherServers.size() + 1;
+        return voters / 2 + 1;
+    }
+
     /**
      * Implements the Paxos prepare phase for acceptors.
      * Promises not to accept proposals with numbers less than the given proposal number.
@@ -203,6 +625,9 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
      */
     @Override
     public synchronized boolean prepare(int proposalNumber) throws RemoteException {
+        if (observer) {
+            throw new RemoteException("Observers do not vote.");
+        }
         if (!isRunning) {
             throw new RemoteException("Server is currently down.");
         }
@@ -225,6 +650,9 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
      */
     @Override
     public synchronized boolean accept(int proposalNumber, String value) throws RemoteException {
+        if (observer) {
+            throw new RemoteException("Observers do not vote.");
+        }
         if (!isRunning) {
             throw new RemoteException("Server is currently down.");
         }
@@ -251,14 +679,97 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         lock.lock();
         try {
             learnedValue = value;
-            return handleRequest(value, RemoteServer.getClientHost());
-        } catch (ServerNotActiveException e) {
-            throw new RuntimeException(e);
+            lastLearnedMillis = System.currentTimeMillis();
+            return apply(value, clientHost());
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Applies a value sent by the voter this observer follows. Values arrive one by one
+     * in the order the voter applied them; a gap in the positions means this observer
+     * missed a value, so it stops applying values and synchronizes again.
+     *
+     * @param stream identifies the run of the voter
+     * @param position the voter's log position of the value
+     * @param value the applied value
+     * @return the result of processing the value, or null if it was received already
+     * @throws RemoteException if this server is not an observer, or it does not follow
+     *         this run of the voter, which then detaches it
+     */
+    @Override
+    public synchronized String replicate(long stream, long position, String value) throws RemoteException {
+        if (!observer) {
+            throw new RemoteException("Only observers replicate values.");
+        }
+        if (!inSync || stream != upstreamStream) {
+            throw new RemoteException("Observer does not follow this voter.");
+        }
+        if (position <= upstreamPosition) {
+            // Sent before the copy of the store this observer synchronized with
+            return null;
+        }
+        if (position != upstreamPosition + 1) {
+            markOutOfSync("expected position " + (upstreamPosition + 1) + " from the voter but got " + position);
+            scheduler.execute(this::syncWithVoters);
+            throw new RemoteException("Observer missed values and synchronizes again.");
+        }
+        upstreamPosition = position;
+        return learn(value);
+    }
+
+    /**
+     * Returns the host of the RMI client calling this server, or "localhost" if the
+     * current thread is not serving a remote call, e.g. the expiry scheduler.
+     *
+     * @return the client host address
+     */
+    private String clientHost() {
+        try {
+            return RemoteServer.getClientHost();
+        } catch (ServerNotActiveException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Applies a learned value at the next log position, publishes it on the change
+     * feed if it changed the store and queues it for the attached observers.
+     * Must be called with the lock held.
+     *
+     * @param value the learned value
+     * @param clientHost the host that sent the value
+     * @return the result of the operation
+     */
+    private String apply(String value, String clientHost) {
+        long position = ++appliedPosition;
+        ServerLogger.logInfo("Applying at position " + position + ": " + value, clientHost,
+                Thread.currentThread().threadId());
+        Response res;
+        keyValueStore.beginApply(position);
+        try {
+            res = handleMessage(value, clientHost);
+        } finally {
+            keyValueStore.endApply();
+        }
+
+        Map<String, VersionedValue> changes = keyValueStore.getAppliedChanges();
+        if (!changes.isEmpty()) {
+            changeFeed.append(position, value, changes);
+        } else {
+            changeFeed.skip(position);
+        }
+        for (Map.Entry<SendMessage, ObserverLink> entry : observers.entrySet()) {
+            if (entry.getValue().isDetached()) {
+                observers.remove(entry.getKey(), entry.getValue());
+            } else {
+                entry.getValue().send(position, value);
+            }
+        }
+        return res != null ? res.toString() : null;
+    }
+
     /**
      * Processes the client request by:
      * 1. Logging the received message
@@ -282,7 +793,8 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
     }
 
     /**
-     * Handles specific operations (PUT, GET, DELETE) on the key-value store.
+     * Handles specific operations (PUT, GET, DELETE, CAS, PUT-IF-ABSENT, INCR, APPEND,
+     * TXN, EXPIRE, SCAN, PREFIX, SNAPSHOT, READ, RELEASE, CHANGES, STATS) on the key-value store.
      * Validates the request format and delegates to the appropriate key-value store operation.
      *
      * @param message the client request message
@@ -294,9 +806,11 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
         String[] parts = message.split(" ");
         switch (parts[0]) {
             case "PUT":
-                if(parts.length != 3){
+                if(parts.length != 3 && parts.length != 4){
                     ServerLogger.logWarning("received PUT request, incorrect number of arguments", clientHost);
                     return null;
+                } else if (parts.length == 4) {
+                    res = keyValueStore.put(parts[1], parts[2], parts[3]);
                 } else {
                     res = keyValueStore.put(parts[1], parts[2]);
                 }
@@ -317,11 +831,164 @@ public class TCPHandler extends UnicastRemoteObject implements SendMessage {
                     res = keyValueStore.delete(parts[1]);
                 }
                 break;
+            case "CAS":
+                if(parts.length != 4){
+                    ServerLogger.logWarning("received CAS request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.compareAndSet(parts[1], parts[2], parts[3]);
+                }
+                break;
+            case "PUT-IF-ABSENT":
+                if(parts.length != 3){
+                    ServerLogger.logWarning("received PUT-IF-ABSENT request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.putIfAbsent(parts[1], parts[2]);
+                }
+                break;
+            case "INCR":
+                if(parts.length != 2 && parts.length != 3){
+                    ServerLogger.logWarning("received INCR request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.increment(parts[1], parts.length == 3 ? parts[2] : "1");
+                }
+                break;
+            case "APPEND":
+                if(parts.length != 3){
+                    ServerLogger.logWarning("received APPEND request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.append(parts[1], parts[2]);
+                }
+                break;
+            case "TXN":
+                // TXN op1;op2;... is chosen as a single Paxos value and applied in one step
+                if(parts.length < 2){
+                    ServerLogger.logWarning("received TXN request without operations", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.transaction(message.substring("TXN ".length()).split(";"));
+                }
+                break;
+            case "EXPIRE":
+                if(parts.length < 2){
+                    ServerLogger.logWarning("received EXPIRE request without keys", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.expire(Arrays.copyOfRange(parts, 1, parts.length));
+                }
+                break;
+            case "SCAN":
+                // SCAN start end limit [AT snapshot]
+                if(parts.length != 4 && !(parts.length == 6 && parts[4].equals("AT"))){
+                    ServerLogger.logWarning("received SCAN request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.scan(parts[1], parts[2], parts[3], parts.length == 6 ? parts[5] : null);
+                }
+                break;
+            case "PREFIX":
+                // PREFIX prefix limit [from] [AT snapshot]
+                String snapshotId = null;
+                int length = parts.length;
+                if (length >= 5 && parts[length - 2].equals("AT")) {
+                    snapshotId = parts[length - 1];
+                    length -= 2;
+                }
+                if(length != 3 && length != 4){
+                    ServerLogger.logWarning("received PREFIX request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.prefix(parts[1], parts[2], length == 4 ? parts[3] : null, snapshotId);
+                }
+                break;
+            case "SNAPSHOT":
+                if(parts.length != 1){
+                    ServerLogger.logWarning("received SNAPSHOT request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.snapshot();
+                }
+                break;
+            case "READ":
+                if(parts.length < 3){
+                    ServerLogger.logWarning("received READ request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.read(parts[1], Arrays.copyOfRange(parts, 2, parts.length));
+                }
+                break;
+            case "RELEASE":
+                if(parts.length != 2){
+                    ServerLogger.logWarning("received RELEASE request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = keyValueStore.release(parts[1]);
+                }
+                break;
+            case "STATS":
+                res = stats();
+                break;
+            case "CHANGES":
+                if(parts.length != 4 && parts.length != 6){
+                    ServerLogger.logWarning("received CHANGES request, incorrect number of arguments", clientHost);
+                    return null;
+                } else {
+                    res = readChanges(parts);
+                }
+                break;
             default:
                 ServerLogger.logWarning("received malformed request of length ", clientHost);
                 break;
         }
         return res;
     }
-}
 
+    /**
+     * Handles "CHANGES from limit wait [KEY key | PREFIX prefix]" by reading the change feed.
+     * {@code from} is a position returned by an earlier CHANGES request as "epoch:position",
+     * or a bare position, which is taken to be in the current epoch of the feed.
+     *
+     * @param parts the tokens of the request
+     * @return a Response object with the matching events, or an error if the arguments are invalid
+     */
+    private Response readChanges(String[] parts) {
+        long epoch = changeFeed.getEpoch();
+        long from;
+        int limit;
+        long waitMillis;
+        try {
+            String position = parts[1];
+            int colon = position.indexOf(':');
+            if (colon >= 0) {
+                epoch = Long.parseLong(position.substring(0, colon));
+                position = position.substring(colon + 1);
+            }
+            from = Long.parseLong(position);
+            limit = Integer.parseInt(parts[2]);
+            waitMillis = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            return new Response("CHANGES","FAIL","Position, limit and wait must be numbers");
+        }
+        if (limit < 1 || limit > ChangeFeed.MAX_BATCH) {
+            return new Response("CHANGES","FAIL","Limit must be between 1 and " + ChangeFeed.MAX_BATCH);
+        }
+        String filter = null;
+        boolean exact = false;
+        if (parts.length == 6) {
+            if (!parts[4].equals("KEY") && !parts[4].equals("PREFIX")) {
+                return new Response("CHANGES","FAIL","Filter must be KEY or PREFIX");
+            }
+            filter = parts[5];
+            exact = parts[4].equals("KEY");
+        }
+        try {
+            return changeFeed.read(epoch, from, limit, waitMillis, filter, exact);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response("CHANGES","FAIL","Interrupted while waiting for changes");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimingWheel is a hierarchical timing wheel that tracks items due at a given time.
+ * Adding an item and expiring it are O(1): each level is a ring of slots, and level n
+ * covers SLOTS times the range of level n - 1. Items in a higher level move down one
+ * level when the wheel reaches their slot, until they land in the lowest level and expire.
+ *
+ * Items cannot be cancelled; callers check whether a returned item is still current.
+ */
+public class TimingWheel<T> {
+    /** Number of slots per level, a power of two */
+    private static final int SLOTS = 64;
+
+    /** log2(SLOTS) */
+    private static final int SLOT_BITS = 6;
+
+    /** Number of levels; 4 levels of 64 slots cover 64^4 ticks */
+    private static final int LEVELS = 4;
+
+    /**
+     * An item together with the tick at which it is due.
+     */
+    private static class Timer<T> {
+        private final T item;
+        private final long dueTick;
+
+        Timer(T item, long dueTick) {
+            this.item = item;
+            this.dueTick = dueTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final ArrayDeque<Timer<T>>[][] wheel;
+
+    /** Items that were already due when they were added or moved down */
+    private final List<T> ready = new ArrayList<>();
+
+    /** The last tick the wheel has advanced to */
+    private long currentTick;
+
+    /**
+     * Creates a timing wheel.
+     *
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param nowMillis the current time in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheel = new ArrayDeque[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    /**
+     * Adds an item that becomes due at the given time.
+     *
+     * @param item the item to track
+     * @param dueMillis the time in milliseconds at which the item is due
+     */
+    public synchronized void add(T item, long dueMillis) {
+        place(new Timer<>(item, (dueMillis + tickMillis - 1) / tickMillis));
+    }
+
+    /**
+     * Advances the wheel to the given time and returns every item that became due.
+     *
+     * @param nowMillis the current time in milliseconds
+     * @return the items due at or before {@code nowMillis}
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Move timers down from every level whose ring wrapped around on this tick,
+            // highest level first so that they can keep falling within the same tick
+            int top = 0;
+            while (top + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+                top++;
+            }
+            for (int level = top; level >= 1; level--) {
+                ArrayDeque<Timer<T>> slot = wheel[level][slotOf(currentTick, level)];
+                List<Timer<T>> cascading = new ArrayList<>(slot);
+                slot.clear();
+                for (Timer<T> timer : cascading) {
+                    place(timer);
+                }
+            }
+            ArrayDeque<Timer<T>> due = wheel[0][slotOf(currentTick, 0)];
+            while (!due.isEmpty()) {
+                ready.add(due.poll().item);
+            }
+        }
+        List<T> result = new ArrayList<>(ready);
+        ready.clear();
+        return result;
+    }
+
+    /**
+     * Puts a timer into the lowest level whose range covers its remaining ticks.
+     * Timers beyond the range of the top level wait in its furthest slot and are placed again later.
+     */
+    private void place(Timer<T> timer) {
+        long remaining = timer.dueTick - currentTick;
+        if (remaining <= 0) {
+            ready.add(timer.item);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (remaining < (1L << (SLOT_BITS * (level + 1)))) {
+                wheel[level][slotOf(timer.dueTick, level)].add(timer);
+                return;
+            }
+        }
+        wheel[LEVELS - 1][slotOf(currentTick - 1, LEVELS - 1)].add(timer);
+    }
+
+    /**
+     * @return the slot of the given tick on the given level
+     */
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+}
@@ -0,0 +1,84 @@
+package server;
+
+/**
+ * VersionedValue is a value stored in the key-value store together with its version.
+ * Every write to a key gives it a new, strictly larger version, which clients use for
+ * compare-and-set (CAS) updates. The value, version and position never change; only
+ * the link to older values is cut by {@link #trim(long)} once no reader needs them.
+ *
+ * The values of a key form a chain from the newest to older ones. Each value records
+ * the log position of the command that wrote it, so a reader pinned at a position
+ * finds the value that was current there. A deleted key is marked by a value of null.
+ */
+public class VersionedValue {
+    private final String value;
+    private final long version;
+    private final long position;
+
+    /** The value this one replaced; cut off once no reader can need it any more */
+    private volatile VersionedValue previous;
+
+    public VersionedValue(String value, long version, long position, VersionedValue previous) {
+        this.value = value;
+        this.version = version;
+        this.position = position;
+        this.previous = previous;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if this entry marks the key as deleted
+     */
+    public boolean isDeleted() {
+        return value == null;
+    }
+
+    /**
+     * Finds the value that was current at a log position.
+     *
+     * @param position the log position to read at
+     * @return the newest value written at or before {@code position}, or null if the key
+     *         did not exist or was deleted there
+     */
+    public VersionedValue at(long position) {
+        VersionedValue current = this;
+        while (current != null && current.position > position) {
+            current = current.previous;
+        }
+        return (current == null || current.isDeleted()) ? null : current;
+    }
+
+    /**
+     * Drops the values no reader at or after {@code horizon} can see. The newest value
+     * written at or before the horizon is kept, since it is current at the horizon.
+     *
+     * @param horizon the oldest log position a reader may still read at
+     * @return the value current at the horizon, or null if every value is newer
+     */
+    public VersionedValue trim(long horizon) {
+        VersionedValue current = this;
+        while (current != null && current.position > horizon) {
+            current = current.previous;
+        }
+        if (current != null) {
+            current.previous = null;
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return value + " version=" + version;
+    }
+}